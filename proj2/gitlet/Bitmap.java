@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A compressed bitmap in the EWAH format: the 64-bit words of the bitmap,
+ * where runs of words that are all zeros or all ones are counted instead of
+ * stored.  The bitmap is a list of markers, each followed by literal words;
+ * a marker holds the bit of its run in bit 0, the number of words of the run
+ * in bits 1 to 32, and the number of literal words after it in bits 33 to
+ * 63.  The set of the ancestors of a commit, by position in the commit
+ * graph, is mostly long runs, and so takes a few words.
+ *  @Author Zhang, Xiaochen
+ */
+class Bitmap {
+    /** The longest run one marker counts. */
+    private static final long MAX_RUN = (1L << 32) - 1;
+    /** The most literal words after one marker. */
+    private static final long MAX_LITERALS = (1L << 31) - 1;
+
+    /** The markers and the literal words. */
+    private final long[] words;
+
+    private Bitmap(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * Compress a bit set.
+     * @param bits the bits.
+     * @return the compressed bitmap.
+     */
+    static Bitmap of(BitSet bits) {
+        long[] raw = bits.toLongArray();
+        long[] words = new long[raw.length + 1];
+        int count = 0;
+        int i = 0;
+        while (i < raw.length) {
+            long clean = raw[i] == -1L ? -1L : 0;
+            int runStart = i;
+            while (i < raw.length && raw[i] == clean && i - runStart < MAX_RUN) {
+                i += 1;
+            }
+            int literalStart = i;
+            while (i < raw.length && raw[i] != 0 && raw[i] != -1L && i - literalStart < MAX_LITERALS) {
+                i += 1;
+            }
+            if (count + 1 + i - literalStart > words.length) {
+                words = Arrays.copyOf(words, Math.max(2 * words.length, count + 1 + i - literalStart));
+            }
+            words[count++] = (clean & 1) | ((long) (literalStart - runStart) << 1)
+                | ((long) (i - literalStart) << 33);
+            System.arraycopy(raw, literalStart, words, count, i - literalStart);
+            count += i - literalStart;
+        }
+        return new Bitmap(Arrays.copyOf(words, count));
+    }
+
+    /** Check if bit BIT is set. */
+    boolean get(int bit) {
+        long word = bit >>> 6;
+        long at = 0;
+        int i = 0;
+        while (i < words.length) {
+            long marker = words[i];
+            long run = (marker >>> 1) & MAX_RUN;
+            long literals = marker >>> 33;
+            if (word < at + run) {
+                return (marker & 1) != 0;
+            }
+            at += run;
+            if (word < at + literals) {
+                return (words[i + 1 + (int) (word - at)] & (1L << bit)) != 0;
+            }
+            at += literals;
+            i += 1 + (int) literals;
+        }
+        return false;
+    }
+
+    /** Set the bits of this bitmap in TARGET as well. */
+    void orInto(BitSet target) {
+        long at = 0;
+        int i = 0;
+        while (i < words.length) {
+            long marker = words[i];
+            long run = (marker >>> 1) & MAX_RUN;
+            long literals = marker >>> 33;
+            if ((marker & 1) != 0) {
+                target.set((int) (at * 64), (int) ((at + run) * 64));
+            }
+            at += run;
+            for (int l = 1; l <= literals; l++) {
+                long literal = words[i + l];
+                while (literal != 0) {
+                    target.set((int) (at * 64) + Long.numberOfTrailingZeros(literal));
+                    literal &= literal - 1;
+                }
+                at += 1;
+            }
+            i += 1 + (int) literals;
+        }
+    }
+
+    /** Write this bitmap to OUT: the number of words, then the words. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    /** Read a bitmap that write wrote from BUFFER. */
+    static Bitmap read(ByteBuffer buffer) {
+        long[] words = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + words.length * 8);
+        return new Bitmap(words);
+    }
+}
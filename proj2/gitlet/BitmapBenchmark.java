@@ -0,0 +1,57 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.TestUtils.*;
+
+/** Times ancestry checks and reachability walks in a commit graph with a
+ *  few branches that merge into each other, first walking the graph and
+ *  then with repack's bitmaps.  Run it as
+ *      java gitlet.BitmapBenchmark [COMMITS]
+ *  @author Zhang, Xiaochen
+ */
+public class BitmapBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int commitCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        File dir = tempDir("gitlet-bitmap");
+        try {
+            List<String> tips = BitmapTest.writeGraph(new File(dir, CommitGraph.FILE_NAME),
+                    commitCount, new Random(25));
+            CommitGraph graph = CommitGraph.load(dir);
+            String root = graph.id(0);
+            List<Integer> tipPositions = new ArrayList<>();
+            for (String tip : tips) {
+                tipPositions.add(graph.position(tip));
+            }
+            double walkMillis = time(graph, root, tips.get(0), tipPositions);
+
+            graph.writeBitmaps(tips);
+            CommitGraph.forget();
+            graph = CommitGraph.load(dir);
+            double bitmapMillis = time(graph, root, tips.get(0), tipPositions);
+            System.out.printf("%d commits: walked %.3f ms per check; with bitmaps (%d bytes) %.3f ms; "
+                    + "speedup %.1fx%n", commitCount, walkMillis,
+                    new File(dir, CommitGraph.BITMAPS_NAME).length(), bitmapMillis, walkMillis / bitmapMillis);
+        } finally {
+            CommitGraph.forget();
+            delete(dir);
+        }
+    }
+
+    /** Returns the mean time of one ancestry check of ROOT from TIP and one
+     *  reachability walk from all of TIPS, in milliseconds. */
+    private static double time(CommitGraph graph, String root, String tip, List<Integer> tips) {
+        int rounds = 20;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            graph.isAncestor(root, tip);
+            graph.reachable(tips, null);
+        }
+        return (System.nanoTime() - start) / 1e6 / rounds;
+    }
+}
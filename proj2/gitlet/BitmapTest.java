@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.TestUtils.*;
+
+/** Tests the reachability bitmaps of the commit graph: checks that Bitmap
+ *  keeps random bit sets, then writes a commit graph with a few branches
+ *  that merge into each other, and checks that ancestry and reachability
+ *  give the same answers once repack's bitmaps are written.  Run it as
+ *      java gitlet.BitmapTest [COMMITS]
+ *  @author Zhang, Xiaochen
+ */
+public class BitmapTest {
+    /** The number of branches of the graph. */
+    private static final int BRANCHES = 4;
+    /** The number of random pairs of commits checked for ancestry. */
+    private static final int PAIRS = 2000;
+
+    public static void main(String[] args) throws IOException {
+        int commitCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random random = new Random(25);
+        for (int round = 0; round < 200; round++) {
+            BitSet bits = randomBits(random);
+            Bitmap bitmap = Bitmap.of(bits);
+            boolean same = true;
+            for (int i = 0; i < bits.length() + 128; i++) {
+                same &= bitmap.get(i) == bits.get(i);
+            }
+            BitSet copy = new BitSet();
+            bitmap.orInto(copy);
+            check("bitmaps", "bitmap " + round, same && copy.equals(bits));
+        }
+
+        File dir = tempDir("gitlet-bitmap");
+        try {
+            List<String> tips = writeGraph(new File(dir, CommitGraph.FILE_NAME), commitCount, random);
+            CommitGraph graph = CommitGraph.load(dir);
+            String root = graph.id(0);
+            String[][] pairs = new String[PAIRS][];
+            boolean[] before = new boolean[PAIRS];
+            for (int i = 0; i < PAIRS; i++) {
+                pairs[i] = new String[]{graph.id(random.nextInt(commitCount)), graph.id(random.nextInt(commitCount))};
+                before[i] = graph.isAncestor(pairs[i][0], pairs[i][1]);
+            }
+            List<Integer> tipPositions = new ArrayList<>();
+            for (String tip : tips) {
+                tipPositions.add(graph.position(tip));
+            }
+            BitSet reachBefore = graph.reachable(tipPositions.subList(0, 1), null);
+
+            graph.writeBitmaps(tips);
+            /* Read the graph and the bitmaps again from the files. */
+            CommitGraph.forget();
+            graph = CommitGraph.load(dir);
+            boolean same = true;
+            for (int i = 0; i < PAIRS; i++) {
+                same &= graph.isAncestor(pairs[i][0], pairs[i][1]) == before[i];
+            }
+            check("bitmaps", "ancestry", same);
+            check("bitmaps", "reachable",
+                    graph.reachable(tipPositions.subList(0, 1), null).equals(reachBefore));
+            check("bitmaps", "root is an ancestor", graph.isAncestor(root, tips.get(0)));
+        } finally {
+            CommitGraph.forget();
+            delete(dir);
+        }
+
+        finish("bitmaps");
+    }
+
+    /** Returns a random bit set with runs of set and clear bits and scattered bits. */
+    private static BitSet randomBits(Random random) {
+        BitSet bits = new BitSet();
+        int at = 0;
+        for (int run = random.nextInt(20); run > 0; run--) {
+            int length = random.nextInt(500);
+            switch (random.nextInt(3)) {
+                case 0:
+                    bits.set(at, at + length);
+                    break;
+                case 1:
+                    for (int i = 0; i < length / 8; i++) {
+                        bits.set(at + random.nextInt(length));
+                    }
+                    break;
+                default:
+                    break;
+            }
+            at += length;
+        }
+        return bits;
+    }
+
+    /** Writes a commit graph file of N commits on BRANCHES branches, each commit
+     *  on a random branch and some merging another branch, and returns the tips. */
+    static List<String> writeGraph(File file, int n, Random random) throws IOException {
+        int[] heads = new int[BRANCHES];
+        int[] generations = new int[n];
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(0x47434752);
+            out.writeInt(1);
+            for (int i = 0; i < n; i++) {
+                int branch = random.nextInt(BRANCHES);
+                int first = i == 0 ? -1 : heads[branch];
+                int other = heads[random.nextInt(BRANCHES)];
+                int second = i > 0 && other != first && random.nextInt(10) == 0 ? other : -1;
+                generations[i] = 1 + Math.max(first < 0 ? 0 : generations[first],
+                        second < 0 ? 0 : generations[second]);
+                out.write(Utils.fromHex(Utils.sha1("commit " + i)));
+                out.writeInt(first);
+                out.writeInt(second);
+                out.writeInt(generations[i]);
+                out.writeLong(i * 1000L);
+                heads[branch] = i;
+            }
+        }
+        List<String> tips = new ArrayList<>();
+        for (int head : heads) {
+            tips.add(Utils.sha1("commit " + head));
+        }
+        return tips;
+    }
+}
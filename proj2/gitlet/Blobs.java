@@ -1,14 +1,51 @@
 package gitlet;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * This class is used to represent the detailed information of a single blob/file.
+ * A blob object on disk is the magic number followed by the Deflate-compressed
+ * content of the file.  Blobs written before compression was added are serialized
+ * Blobs objects; they are still read back by checking the magic number.
+ * A file of CHUNKED_MIN_SIZE bytes or more is split into chunks by Chunker, each
+ * saved as a blob of its own, and its blob lists the ids of the chunks instead:
+ * the chunked magic number, the size of the content, the number of chunks and
+ * their ids.  Versions of a large file that differ a little share most chunks.
+ * A blob stored in the pack as a delta, see Pack, is read back with the raw
+ * magic number followed by its content uncompressed.
  */
-public class Blobs implements Serializable {
+public class Blobs implements Encodable {
 
+    /** The serialVersionUID of the blobs that older versions of gitlet
+     *  Java-serialized, so that they are still read. */
+    private static final long serialVersionUID = 5889969846440214994L;
     /** The directory of all the blobs. */
     public static final File BLOB_DIR = Utils.join(Repository.GITLET_DIR, "objects");
+    /** The magic number at the head of a compressed blob, "GBLZ". */
+    private static final int MAGIC = 0x47424c5a;
+    /** The magic number at the head of a blob that lists its chunks, "GBLC". */
+    private static final int CHUNKED_MAGIC = 0x47424c43;
+    /** The magic number at the head of a blob that is not compressed, "GBLR". */
+    private static final int RAW_MAGIC = 0x47424c52;
+    /** The size from which a file is saved in chunks, 1 MiB. */
+    static final long CHUNKED_MIN_SIZE = 1024 * 1024;
+    /** The size of the buffers used when streaming a blob. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** The total size of the blob contents kept in the cache, 16 MiB. */
+    private static final long CACHE_BYTES = 16 * 1024 * 1024;
+    /** The contents read by readContent, by the path of their blob. */
+    static final ObjectCache<byte[]> CACHE = new ObjectCache<>(CACHE_BYTES, content -> content.length);
     /** The content of this blob. */
     private byte[] content;
     /** The SHA-1 Hash of this blob and file name. */
@@ -19,9 +56,329 @@ public class Blobs implements Serializable {
         this.blobId = Utils.sha1(content);
     }
 
-    public void saveBlob() {
-        File blobFile = Utils.join(BLOB_DIR, blobId);
-        Utils.writeObject(blobFile, this);
+    /**
+     * Save the content of the given file as a compressed blob.
+     * The file, which is smaller than a chunked one, is streamed once: it is
+     * hashed while it is compressed into a temporary file, which is renamed
+     * to the id unless the blob is saved already, so that the whole file is
+     * never in memory.
+     * @param source the file to be saved.
+     * @return the id of the blob.
+     */
+    public static String saveBlob(File source) {
+        if (source.length() >= CHUNKED_MIN_SIZE) {
+            return saveChunked(source);
+        }
+        MessageDigest md = newDigest();
+        try {
+            File tmp = File.createTempFile("blob", ".tmp", BLOB_DIR);
+            try (InputStream in = new DigestInputStream(new FileInputStream(source), md);
+                 OutputStream out = openCompressed(tmp)) {
+                in.transferTo(out);
+            }
+            String id = Utils.toHex(md.digest());
+            /* The same content may be saved in parallel; then the new copy is dropped. */
+            if (Pack.exists(BLOB_DIR, id) || !tmp.renameTo(Utils.join(BLOB_DIR, id))) {
+                tmp.delete();
+            } else {
+                Journal.addObject(Utils.join(BLOB_DIR, id));
+                Pack.added(BLOB_DIR, id);
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Save the content of the given file in chunks, and a blob that lists
+     * them.  The chunks that are saved already, such as the ones an older
+     * version of the file shares with it, are not written again.
+     * @param source the file to be saved.
+     * @return the id of the blob, which is the hash of the whole content.
+     */
+    private static String saveChunked(File source) {
+        MessageDigest md = newDigest();
+        List<String> chunkIds = new ArrayList<>();
+        long size = 0;
+        try (InputStream in = new FileInputStream(source)) {
+            Chunker chunker = new Chunker(in);
+            for (int length = chunker.next(); length > 0; length = chunker.next()) {
+                md.update(chunker.buffer(), 0, length);
+                chunkIds.add(saveChunk(chunker.buffer(), length));
+                size += length;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = Utils.toHex(md.digest());
+        File blobFile = Utils.join(BLOB_DIR, id);
+        if (Pack.exists(BLOB_DIR, id)) {
+            Journal.addObject(blobFile);
+            return id;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(CHUNKED_MAGIC);
+            out.writeLong(size);
+            out.writeInt(chunkIds.size());
+            for (String chunkId : chunkIds) {
+                out.write(Utils.fromHex(chunkId));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(blobFile, bytes.toByteArray());
+        Pack.added(BLOB_DIR, id);
+        return id;
+    }
+
+    /**
+     * Save one chunk as a compressed blob, unless it is saved already.
+     * @param content the buffer that holds the chunk at its head.
+     * @param length the length of the chunk.
+     * @return the id of the chunk.
+     */
+    private static String saveChunk(byte[] content, int length) {
+        MessageDigest md = newDigest();
+        md.update(content, 0, length);
+        String id = Utils.toHex(md.digest());
+        File chunkFile = Utils.join(BLOB_DIR, id);
+        if (Pack.exists(BLOB_DIR, id)) {
+            return id;
+        }
+        try {
+            /* Other files saved in parallel may share the chunk. */
+            File tmp = File.createTempFile("chunk", ".tmp", BLOB_DIR);
+            try (OutputStream out = openCompressed(tmp)) {
+                out.write(content, 0, length);
+            }
+            if (Pack.exists(BLOB_DIR, id) || !tmp.renameTo(chunkFile)) {
+                tmp.delete();
+            } else {
+                Journal.addObject(chunkFile);
+                Pack.added(BLOB_DIR, id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return id;
+    }
+
+    /** Get a new SHA-1 digest. */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**
+     * Get the ids of the chunks of a blob.
+     * @param object the bytes of the blob object.
+     * @return the ids of its chunks in order, or none if it is not chunked.
+     */
+    static List<String> chunkIds(byte[] object) {
+        List<String> chunkIds = new ArrayList<>();
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(object));
+            if (object.length < 4 || in.readInt() != CHUNKED_MAGIC) {
+                return chunkIds;
+            }
+            readChunkIds(in, chunkIds);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupted chunked blob.");
+        }
+        return chunkIds;
+    }
+
+    /**
+     * Get the ids of the chunks of a blob, reading no more of the object than
+     * its magic number unless it is chunked.
+     * @param objectsDir the objects directory, local or remote.
+     * @param blobId the id of the blob; one stored as a delta is rebuilt first.
+     * @return the ids of its chunks in order, or none if it is not chunked.
+     */
+    static List<String> chunkIds(File objectsDir, String blobId) {
+        List<String> chunkIds = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(Utils.openObject(Utils.join(objectsDir, blobId)))) {
+            if (in.readInt() == CHUNKED_MAGIC) {
+                readChunkIds(in, chunkIds);
+            }
+        } catch (EOFException excp) {
+            return chunkIds;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return chunkIds;
+    }
+
+    /** Read the ids of the chunks that follow the chunked magic number from IN into CHUNKIDS. */
+    private static void readChunkIds(DataInputStream in, List<String> chunkIds) throws IOException {
+        in.readLong();
+        int count = in.readInt();
+        byte[] raw = new byte[Utils.UID_LENGTH / 2];
+        for (int i = 0; i < count; i++) {
+            in.readFully(raw);
+            chunkIds.add(Utils.toHex(raw));
+        }
+    }
+
+    /**
+     * Get the content of a blob that is in one piece, as a delta needs it.
+     * @param object the bytes of the blob object.
+     * @return the content, or null if the object is chunked or is no blob.
+     */
+    static byte[] inflate(byte[] object) {
+        if (object.length < 4) {
+            return null;
+        }
+        int magic = ByteBuffer.wrap(object).getInt();
+        if (magic == RAW_MAGIC) {
+            return Arrays.copyOfRange(object, 4, object.length);
+        }
+        if (magic != MAGIC) {
+            return null;
+        }
+        try (InputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(object, 4, object.length - 4))) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw Utils.error("Corrupted blob.");
+        }
+    }
+
+    /**
+     * Make the object of a blob with the given content, not compressed.
+     * @param content the content.
+     * @return the bytes of the blob object.
+     */
+    static byte[] rawObject(byte[] content) {
+        return ByteBuffer.allocate(4 + content.length).putInt(RAW_MAGIC).put(content).array();
+    }
+
+    /**
+     * Get the object of a blob compressed, as blobs are saved.  The object
+     * the pack rebuilds from a delta is not compressed, see rawObject.
+     * @param object the bytes of the blob object.
+     * @return the compressed object, or OBJECT itself if it is not a raw one.
+     */
+    static byte[] compressed(byte[] object) {
+        if (object.length < 4 || ByteBuffer.wrap(object).getInt() != RAW_MAGIC) {
+            return object;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(object.length / 2 + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            try (DeflaterOutputStream deflated = new DeflaterOutputStream(out)) {
+                deflated.write(object, 4, object.length - 4);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Open FILE for writing a compressed blob, writing the magic number first. */
+    private static OutputStream openCompressed(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        new DataOutputStream(out).writeInt(MAGIC);
+        return new DeflaterOutputStream(out);
+    }
+
+    /**
+     * Open a stream over the uncompressed content of a blob.
+     * @param objectsDir the objects directory, local or remote.
+     * @param blobId the id of the blob.
+     */
+    public static InputStream openContent(File objectsDir, String blobId) {
+        InputStream in = Utils.openObject(Utils.join(objectsDir, blobId));
+        try {
+            in.mark(4);
+            int magic = new DataInputStream(in).readInt();
+            if (magic == MAGIC) {
+                return new InflaterInputStream(in);
+            }
+            if (magic == RAW_MAGIC) {
+                return in;
+            }
+            if (magic == CHUNKED_MAGIC) {
+                /* The chunks are opened one at a time, as they are reached. */
+                List<String> chunkIds = new ArrayList<>();
+                try (DataInputStream list = new DataInputStream(in)) {
+                    readChunkIds(list, chunkIds);
+                }
+                Iterator<String> chunks = chunkIds.iterator();
+                return new SequenceInputStream(new Enumeration<InputStream>() {
+                    @Override
+                    public boolean hasMoreElements() {
+                        return chunks.hasNext();
+                    }
+
+                    @Override
+                    public InputStream nextElement() {
+                        return openContent(objectsDir, chunks.next());
+                    }
+                });
+            }
+            /* An old blob, which is a Blobs object written by Utils.writeObject. */
+            in.reset();
+            Blobs blob = (Blobs) Codec.decode(in);
+            return new ByteArrayInputStream(blob.getContent());
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Read the whole uncompressed content of a blob.  Small contents are
+     * kept in the cache, so the returned array must not be changed.
+     * @param blobId the id of the blob.
+     */
+    public static byte[] readContent(String blobId) {
+        return CACHE.get(Utils.join(BLOB_DIR, blobId).getPath(), path -> {
+            try (InputStream in = openContent(BLOB_DIR, blobId)) {
+                return in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Write the content of a blob into the given file, streaming it
+     * from the object so that the file is never held in memory as a whole.
+     * The directories of the file are made if they are missing.
+     * @param blobId the id of the blob.
+     * @param target the file to be written.
+     */
+    public static void restore(String blobId, File target) {
+        target.getParentFile().mkdirs();
+        try (InputStream in = openContent(BLOB_DIR, blobId);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(target), BUFFER_SIZE)) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public byte codecTag() {
+        return Codec.BLOBS;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    /** Read a blob written by encode. */
+    static Blobs decode(DataInputStream in) throws IOException {
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        return new Blobs(content);
     }
 
     public String getBlobId() {
@@ -0,0 +1,66 @@
+package gitlet;
+
+/**
+ * A Bloom filter over object ids, which tells in memory that an object is
+ * certainly not in a set, or that it may be.  Each id sets HASHES bits of a
+ * bit array, and an id whose bits are not all set was never added.  Since
+ * object ids are SHA-1 hashes already, the bits are picked from the id
+ * itself, by double hashing its first two 64-bit words.
+ * With BITS_PER_ID bits for each id it is sized for, about one id in a
+ * hundred that was never added is still said to be there.
+ *  @Author Zhang, Xiaochen
+ */
+class BloomFilter {
+    /** The number of bits of the array for each id the filter is sized for. */
+    private static final int BITS_PER_ID = 10;
+    /** The number of bits each id sets. */
+    private static final int HASHES = 7;
+
+    /** The bits. */
+    private final long[] bits;
+    /** The number of bits. */
+    private final long size;
+
+    /**
+     * Make an empty filter.
+     * @param expected the number of ids the filter is sized for; more may be
+     *                 added, but then more ids are wrongly said to be there.
+     */
+    BloomFilter(int expected) {
+        long words = Math.max(1, ((long) expected * BITS_PER_ID + 63) / 64);
+        this.bits = new long[(int) Math.min(words, Integer.MAX_VALUE - 8)];
+        this.size = bits.length * 64L;
+    }
+
+    /** Add the object id ID. */
+    synchronized void add(String id) {
+        long h1 = word(id, 0);
+        long h2 = word(id, 16) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, size);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /** Check if the object id ID may have been added; false if it certainly was not. */
+    synchronized boolean mightContain(String id) {
+        long h1 = word(id, 0);
+        long h2 = word(id, 16) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, size);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Get the 64-bit word of the hex digits of ID from FROM on. */
+    private static long word(String id, int from) {
+        long word = 0;
+        for (int i = from; i < from + 16; i++) {
+            word = (word << 4) | Character.digit(id.charAt(i), 16);
+        }
+        return word;
+    }
+}
@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.TestUtils.*;
+
+/** Tests the Bloom filter of the loose objects: checks that BloomFilter
+ *  never says that an id it was given is missing, even when more ids are
+ *  added than it is sized for, and that about one id in a hundred it was
+ *  not given is said to be there.  Then checks that Pack.exists finds every
+ *  loose object and no other, that an object saved after the filter was
+ *  built is found by the same command, and that one written by another
+ *  process is found once the packs are refreshed, as the next command in
+ *  the daemon does.  Run it as
+ *      java gitlet.BloomFilterTest [IDS]
+ *  @author Zhang, Xiaochen
+ */
+public class BloomFilterTest {
+    /** The number of loose objects written into the objects directory. */
+    private static final int LOOSE = 2000;
+
+    public static void main(String[] args) throws IOException {
+        int idCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(23);
+
+        List<String> added = randomIds(idCount, random);
+        BloomFilter filter = new BloomFilter(idCount);
+        added.forEach(filter::add);
+        check("bloom", "added", added.stream().allMatch(filter::mightContain));
+        int wrong = 0;
+        for (String id : randomIds(idCount, random)) {
+            wrong += filter.mightContain(id) ? 1 : 0;
+        }
+        check("bloom", "false positives " + wrong, wrong < idCount * 2 / 100);
+        BloomFilter overfull = new BloomFilter(idCount / 10);
+        added.forEach(overfull::add);
+        check("bloom", "overfull", added.stream().allMatch(overfull::mightContain));
+
+        File dir = tempDir("gitlet-bloom");
+        try {
+            File objectsDir = new File(dir, "objects");
+            List<String> loose = randomIds(LOOSE, random);
+            for (String id : loose) {
+                write(objectsDir, id, id);
+            }
+            Pack.forget();
+            check("bloom", "loose", loose.stream().allMatch(id -> Pack.exists(objectsDir, id)));
+            check("bloom", "missing", randomIds(LOOSE, random).stream()
+                    .noneMatch(id -> Pack.exists(objectsDir, id)));
+
+            /* Saved by this command after the filter was built. */
+            String treeId = Utils.sha1(Codec.encode(Tree.EMPTY));
+            check("bloom", "before save", !Pack.exists(objectsDir, treeId));
+            Tree.EMPTY.save(objectsDir);
+            check("bloom", "saved", Pack.exists(objectsDir, treeId));
+
+            /* Written by another process. */
+            String otherId = randomIds(1, random).get(0);
+            Files.writeString(new File(objectsDir, otherId).toPath(), otherId);
+            Pack.refresh();
+            check("bloom", "written by another process", Pack.exists(objectsDir, otherId));
+        } finally {
+            delete(dir);
+        }
+        finish("bloom");
+    }
+
+    /** Returns COUNT random object ids. */
+    private static List<String> randomIds(int count, Random random) {
+        List<String> ids = new ArrayList<>(count);
+        byte[] raw = new byte[Utils.UID_LENGTH / 2];
+        for (int i = 0; i < count; i++) {
+            random.nextBytes(raw);
+            ids.add(Utils.toHex(raw));
+        }
+        return ids;
+    }
+}
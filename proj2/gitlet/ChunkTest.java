@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static gitlet.TestUtils.*;
+
+/** Tests the chunked blobs of large files: commits two versions of a file
+ *  that differ in one line, checks that the second version takes little more
+ *  storage, that both are checked out again intact, and that fetch copies
+ *  their chunks.  Run it as
+ *      java gitlet.ChunkTest [MEBIBYTES]
+ *  @author Zhang, Xiaochen
+ */
+public class ChunkTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int mebibytes = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        File dir = tempDir("gitlet-chunk");
+        File remote = tempDir("gitlet-chunk");
+        try {
+            Random random = new Random(61);
+            byte[] first = makeText(mebibytes * 1024 * 1024, random);
+            byte[] second = editLine(first, random);
+            File file = new File(dir, "large.txt");
+            gitlet(dir, "init");
+            Files.write(file.toPath(), first);
+            gitlet(dir, "add", "large.txt");
+            gitlet(dir, "commit", "first");
+            long firstBytes = objectBytes(dir);
+            Files.write(file.toPath(), second);
+            gitlet(dir, "add", "large.txt");
+            gitlet(dir, "commit", "second");
+            long secondBytes = objectBytes(dir) - firstBytes;
+            check("chunked blobs", "storage", secondBytes * 10 < firstBytes);
+
+            String log = gitlet(dir, "log");
+            String firstId = log.split("\n")[6].substring("commit ".length());
+            gitlet(dir, "checkout", firstId, "--", "large.txt");
+            check("chunked blobs", "first version", Arrays.equals(Files.readAllBytes(file.toPath()), first));
+            gitlet(dir, "checkout", "--", "large.txt");
+            check("chunked blobs", "second version", Arrays.equals(Files.readAllBytes(file.toPath()), second));
+
+            gitlet(remote, "init");
+            gitlet(remote, "add-remote", "origin", new File(dir, ".gitlet").getPath());
+            gitlet(remote, "fetch", "origin", "master");
+            gitlet(remote, "checkout", "origin/master");
+            check("chunked blobs", "fetch",
+                    Arrays.equals(Files.readAllBytes(new File(remote, "large.txt").toPath()), second));
+        } finally {
+            delete(dir);
+            delete(remote);
+        }
+        finish("chunked blobs");
+    }
+
+    /** Returns the total size of the objects of the repository in DIR. */
+    private static long objectBytes(File dir) {
+        long size = 0;
+        for (File object : new File(dir, ".gitlet/objects").listFiles()) {
+            size += object.isFile() ? object.length() : 0;
+        }
+        return size;
+    }
+}
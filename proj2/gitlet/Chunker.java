@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Splits a stream into chunks at boundaries chosen by its content, with a
+ * Gear rolling hash over the last 64 bytes: a chunk ends where the top bits
+ * of the hash are all zero.  An edit in the middle of a file thus changes
+ * only the chunks around it, and the chunks before and after it are found
+ * again at the same boundaries, whereas chunks of fixed size would all shift.
+ * Chunks are between MIN_SIZE and MAX_SIZE bytes, AVERAGE_SIZE on average.
+ *  @Author Zhang, Xiaochen
+ */
+class Chunker {
+    /** The smallest size of a chunk, except for the last one. */
+    static final int MIN_SIZE = 16 * 1024;
+    /** The average size of a chunk. */
+    static final int AVERAGE_SIZE = 64 * 1024;
+    /** The largest size of a chunk. */
+    static final int MAX_SIZE = 256 * 1024;
+    /** The bits of the hash that are all zero at the end of a chunk, as many
+     *  as it takes for that to happen once in AVERAGE_SIZE bytes. */
+    private static final long MASK = -1L << (64 - Integer.numberOfTrailingZeros(AVERAGE_SIZE));
+    /** The random value of each byte that the rolling hash adds up.  The seed
+     *  is fixed, so that every repository splits the same content the same way. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** The stream being split. */
+    private final InputStream in;
+    /** The bytes read from the stream and not yet handed out. */
+    private final byte[] buffer = new byte[MAX_SIZE];
+    /** The number of bytes in the buffer. */
+    private int length;
+    /** The length of the chunk last handed out, at the head of the buffer. */
+    private int chunk;
+    /** True once the stream has no more bytes. */
+    private boolean eof;
+
+    /**
+     * Make a chunker over a stream, which the caller closes.
+     * @param in the stream.
+     */
+    Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Find the next chunk, which is then at the head of the buffer.
+     * @return the length of the chunk, or 0 at the end of the stream.
+     */
+    int next() throws IOException {
+        /* Drop the last chunk and fill the buffer again. */
+        System.arraycopy(buffer, chunk, buffer, 0, length - chunk);
+        length -= chunk;
+        while (!eof && length < MAX_SIZE) {
+            int n = in.read(buffer, length, MAX_SIZE - length);
+            if (n < 0) {
+                eof = true;
+            } else {
+                length += n;
+            }
+        }
+        chunk = length;
+        long hash = 0;
+        for (int i = MIN_SIZE; i < length; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ((hash & MASK) == 0) {
+                chunk = i + 1;
+                break;
+            }
+        }
+        return chunk;
+    }
+
+    /** Get the buffer, which holds the chunk last found at its head. */
+    byte[] buffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The binary format of the gitlet objects written by Utils.writeObject.
+ * An encoded object is the magic number, the format version, the tag of its
+ * class and then the fields written by its encode method.  Files that do not
+ * start with the magic number are Java-serialized objects written by older
+ * versions of gitlet, and are still read with an ObjectInputStream.
+ *  @Author Zhang, Xiaochen
+ */
+class Codec {
+    /** The magic number at the head of an encoded object, "GLTB". */
+    static final int MAGIC = 0x474c5442;
+    /** The version of the binary format. */
+    static final byte VERSION = 1;
+
+    /** The tag of a Commit that lists all of its blobs, as older versions wrote. */
+    static final byte COMMIT = 1;
+    /** The tag of Blobs. */
+    static final byte BLOBS = 2;
+    /** The tag of Head. */
+    static final byte HEAD = 3;
+    /** The tag of Remote. */
+    static final byte REMOTE = 4;
+    /** The tag of Tree. */
+    static final byte TREE = 5;
+    /** The tag of a Commit that names its root Tree. */
+    static final byte TREE_COMMIT = 6;
+
+    /** Return the bytes of OBJ, encoded if it is Encodable, serialized otherwise. */
+    static byte[] encode(Serializable obj) {
+        if (!(obj instanceof Encodable)) {
+            return Utils.serialize(obj);
+        }
+        Encodable encodable = (Encodable) obj;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(encodable.codecTag());
+            encodable.encode(out);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding %s.", obj.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Read one object from IN, which must support mark and reset.
+     * IN is closed afterwards.
+     */
+    static Object decode(InputStream in) throws IOException, ClassNotFoundException {
+        try (InputStream source = in) {
+            source.mark(4);
+            DataInputStream data = new DataInputStream(source);
+            if (data.readInt() != MAGIC) {
+                /* An object written with Java serialization. */
+                source.reset();
+                return new ObjectInputStream(source).readObject();
+            }
+            byte version = data.readByte();
+            if (version != VERSION) {
+                throw new IOException("unknown object format version " + version);
+            }
+            byte tag = data.readByte();
+            switch (tag) {
+                case COMMIT:
+                    return Commit.decode(data);
+                case BLOBS:
+                    return Blobs.decode(data);
+                case HEAD:
+                    return Head.decode(data);
+                case REMOTE:
+                    return Remote.decode(data);
+                case TREE:
+                    return Tree.decode(data);
+                case TREE_COMMIT:
+                    return Commit.decodeTree(data);
+                default:
+                    throw new IOException("unknown object tag " + tag);
+            }
+        }
+    }
+
+    /* FIELD HELPERS */
+
+    /** Write the string S, which may be null or longer than writeUTF allows. */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Read a string written by writeString. */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write the object id ID, which may be null, as raw bytes. */
+    static void writeId(DataOutputStream out, String id) throws IOException {
+        if (id == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        out.write(Utils.fromHex(id));
+    }
+
+    /** Read an object id written by writeId. */
+    static String readId(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] raw = new byte[Utils.UID_LENGTH / 2];
+        in.readFully(raw);
+        return Utils.toHex(raw);
+    }
+
+    /** Write MAP, from names to object ids, in key order. */
+    static void writeIdMap(DataOutputStream out, SortedMap<String, String> map)
+            throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeId(out, entry.getValue());
+        }
+    }
+
+    /** Read a map written by writeIdMap, checking that its entries arrive
+     *  in ascending key order, as writeIdMap writes them. */
+    static TreeMap<String, String> readIdMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        TreeMap<String, String> map = new TreeMap<>();
+        String last = null;
+        for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            if (last != null && last.compareTo(key) >= 0) {
+                throw new IOException("map keys out of order at " + key);
+            }
+            map.put(key, readId(in));
+            last = key;
+        }
+        return map;
+    }
+
+    /** Write the list of strings LIST. */
+    static void writeStrings(DataOutputStream out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            writeString(out, s);
+        }
+    }
+
+    /** Read a list of strings written by writeStrings. */
+    static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.TreeMap;
+
+/** Performs a timing test of the binary Codec against Java serialization,
+ *  on trees listing different numbers of files.  Run it as
+ *      java gitlet.CodecSpeedTest [ROUNDS]
+ *  @author Zhang, Xiaochen
+ */
+public class CodecSpeedTest {
+    /** The numbers of files listed by the trees under test. */
+    private static final int[] FILE_COUNTS = {10, 100, 1000, 10000};
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        System.out.println("Encoding and decoding a tree " + rounds + " times.");
+        for (int files : FILE_COUNTS) {
+            Tree tree = makeTree(files);
+            byte[] serialized = Utils.serialize(tree);
+            byte[] encoded = Codec.encode(tree);
+            /* Warm up both paths before timing them. */
+            timeSerialization(tree, rounds);
+            timeCodec(tree, rounds);
+            double serialTime = timeSerialization(tree, rounds);
+            double codecTime = timeCodec(tree, rounds);
+            System.out.printf("%6d files: serialization %8.2f ms, %8d bytes;"
+                    + " codec %8.2f ms, %8d bytes; speedup %.1fx%n",
+                    files, serialTime, serialized.length, codecTime, encoded.length,
+                    serialTime / codecTime);
+        }
+    }
+
+    /** Returns a tree listing N files with made-up blob ids.  It has no
+     *  subdirectories, so no tree is read or saved in making it. */
+    private static Tree makeTree(int n) {
+        TreeMap<String, String> files = new TreeMap<>();
+        for (int i = 0; i < n; i++) {
+            files.put("dir" + (i % 10) + "_file" + i + ".txt", Utils.sha1("content " + i));
+        }
+        return Tree.EMPTY.update(Repository.OBJECTS_DIR, files);
+    }
+
+    /** Returns the milliseconds needed to serialize and deserialize TREE
+     *  ROUNDS times with Java serialization. */
+    private static double timeSerialization(Tree tree, int rounds)
+            throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            byte[] bytes = Utils.serialize(tree);
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            in.readObject();
+            in.close();
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Returns the milliseconds needed to encode and decode TREE
+     *  ROUNDS times with Codec. */
+    private static double timeCodec(Tree tree, int rounds)
+            throws IOException, ClassNotFoundException {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            byte[] bytes = Codec.encode(tree);
+            Codec.decode(new ByteArrayInputStream(bytes));
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -1,18 +1,28 @@
 package gitlet;
 
 import java.io.*;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 /**
  * Represents a gitlet commit object does at a high level.
  *  @Author Zhang, Xiaochen
  */
-public class Commit implements Serializable {
+public class Commit implements Encodable {
 
+    /** The serialVersionUID of the commits that older versions of gitlet
+     *  Java-serialized, so that they are still read. */
+    private static final long serialVersionUID = 3437897016288707451L;
     /** The directory of all the commits. */
     private static File COMMIT_DIR = Utils.join(Repository.GITLET_DIR, "objects");
+    /** The format of the time of a commit in log, which is immutable and so shared by all. */
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+    /** The number of commits kept in the cache of commits read from disk. */
+    private static final int CACHE_SIZE = 4096;
+    /** The commits read from disk, by the path of their object. */
+    static final ObjectCache<Commit> CACHE = new ObjectCache<>(CACHE_SIZE, commit -> 1);
     /** The message of this Commit. */
     private final String message;
     /** The time of this Commit. */
@@ -22,8 +32,14 @@ public class Commit implements Serializable {
     private String secondParent;
     /** The SHA-1 Hash of this Commit. */
     private String hashCode;
-    /** The directory of the blobs of this Commit. */
-    private final TreeMap<String, String> blobs;
+    /** The id of the root tree of this Commit, or null if it was written by
+     *  an older version of gitlet, which listed all of its blobs instead. */
+    private final String tree;
+    /** The blob ids of the files of this Commit by path, which are read from
+     *  its trees when first asked for, unless it lists them. */
+    private TreeMap<String, String> blobs;
+    /** The objects directory that holds the trees of this Commit. */
+    private transient File objectsDir = COMMIT_DIR;
 
     /**
      * This function is used to init the git.
@@ -33,53 +49,151 @@ public class Commit implements Serializable {
         message = "initial commit";
         firstParent = null;
         secondParent = null;
-        blobs = new TreeMap<>();
-        hashCode = Utils.sha1(message, timesTamp.toString(), blobs.toString());
+        tree = Tree.EMPTY.save(COMMIT_DIR);
+        hashCode = Utils.sha1(message, timesTamp.toString(), tree);
     }
 
-    public Commit(String massage, String firstParent) {
+    private Commit(String message, Date timesTamp, String firstParent, String secondParent,
+                   String hashCode, String tree, TreeMap<String, String> blobs) {
+        this.message = message;
+        this.timesTamp = timesTamp;
+        this.firstParent = firstParent;
+        this.secondParent = secondParent;
+        this.hashCode = hashCode;
+        this.tree = tree;
+        this.blobs = blobs;
+    }
+
+    public Commit(String massage, String firstParent, Staging staging) {
+        this(massage, firstParent, null, staging);
+    }
+
+    /**
+     * Make a commit of the staged files on top of its first parent.
+     * @param massage the message.
+     * @param firstParent the id of the first parent.
+     * @param secondParent the id of the branch merged in, or null.
+     * @param staging the staging area.
+     */
+    public Commit(String massage, String firstParent, String secondParent, Staging staging) {
         this.message = massage;
         timesTamp = new Date();
         this.firstParent = firstParent;
-        this.secondParent = null;
-        this.blobs = new TreeMap<>();
+        this.secondParent = secondParent;
         /* Now add/remove the blobs */
-        getUpdatedBlobs();
-        hashCode = Utils.sha1(message, timesTamp.toString(), blobs.toString());
-    }
-
-    private void getUpdatedBlobs() {
-        if (firstParent != null) {
-            Commit parent = Utils.readObject(Utils.join(COMMIT_DIR, firstParent), Commit.class);
-            blobs.putAll(parent.blobs);
-            /* now add/revise files appeared in the add stage */
-            File addStage = Repository.ADD_STAGE_DIR;
-            for (String file : Utils.plainFilenamesIn(addStage)) {
-                blobs.put(file, Utils.sha1(Utils.readContents(Utils.join(addStage, file))));
-            }
-            /* now remove files appeared in the remove stage */
-            File removeStage = Repository.REMOVE_STAGE_DIR;
-            for (String file : Utils.plainFilenamesIn(removeStage)) {
-                blobs.remove(file);
-            }
+        tree = getUpdatedTree(staging);
+        /* Every parent is hashed, so merges of different branches differ. */
+        hashCode = secondParent == null
+            ? Utils.sha1(message, timesTamp.toString(), tree, firstParent)
+            : Utils.sha1(message, timesTamp.toString(), tree, firstParent, secondParent);
+    }
+
+    /**
+     * Save the trees of this commit, which are those of the parent except
+     * along the paths of the staged files.
+     * @return the id of the root tree.
+     */
+    private String getUpdatedTree(Staging staging) {
+        Commit parent = load(firstParent);
+        Tree parentTree;
+        if (parent.tree != null) {
+            parentTree = Tree.load(COMMIT_DIR, parent.tree);
+        } else {
+            /* The parent lists its blobs; its trees are made once, here. */
+            parentTree = Tree.EMPTY.update(COMMIT_DIR, parent.blobs);
+        }
+        /* now add/revise files appeared in the add stage,
+         * and remove files appeared in the remove stage */
+        TreeMap<String, String> changes = new TreeMap<>(staging.getAdded());
+        for (String file : staging.getRemoved()) {
+            changes.put(file, null);
         }
+        return parentTree.update(COMMIT_DIR, changes).save(COMMIT_DIR);
     }
+
+    /**
+     * Read the commit with the given id from the objects directory.
+     * Commits never change once saved, so each one is read from disk only
+     * once per command and then handed out from the cache.
+     * @param commitId the id of the commit.
+     */
+    public static Commit load(String commitId) {
+        return load(COMMIT_DIR, commitId);
+    }
+
+    /**
+     * Read the commit with the given id from the given objects directory,
+     * which may be a remote one.
+     * @param objectsDir the objects directory.
+     * @param commitId the id of the commit.
+     */
+    public static Commit load(File objectsDir, String commitId) {
+        return CACHE.get(Utils.join(objectsDir, commitId).getPath(), path -> {
+            Commit commit = Utils.readObject(new File(path), Commit.class);
+            commit.objectsDir = objectsDir;
+            return commit;
+        });
+    }
+
     public void saveCommit() {
-        File commitFile = Utils.join(COMMIT_DIR, hashCode);
-        Utils.writeObject(commitFile, this);
-        /* bad patch for global log :( */
-        commitFile = Utils.join(COMMIT_DIR, "commits", hashCode);
-        Utils.writeObject(commitFile, this);
+        saveCommit(Repository.GITLET_DIR);
+    }
+
+    /**
+     * Save this commit into the given .gitlet directory, which may be a remote one.
+     * The commit is written once as an object, and it is appended to the commit log,
+     * the commit graph and, last, the commit id index, which tells that it is saved:
+     * the object alone may be left by a command that crashed.
+     * @param gitletDir the .gitlet directory.
+     */
+    public void saveCommit(File gitletDir) {
+        File objectsDir = Utils.join(gitletDir, "objects");
+        CommitIndex index = CommitIndex.load(gitletDir);
+        if (index.contains(hashCode)) {
+            return;
+        }
+        if (!Pack.exists(objectsDir, hashCode)) {
+            Utils.writeObject(Utils.join(objectsDir, hashCode), this);
+            Pack.added(objectsDir, hashCode);
+        } else {
+            Journal.addObject(Utils.join(objectsDir, hashCode));
+        }
+        CommitLog.load(gitletDir).add(this);
+        CommitGraph.load(gitletDir).add(this);
+        index.add(hashCode);
+    }
+
+    /**
+     * Get the ids of all the commits saved in the given .gitlet directory,
+     * oldest first.
+     * @param gitletDir the .gitlet directory.
+     */
+    public static List<String> allCommitIds(File gitletDir) {
+        return CommitLog.load(gitletDir).ids();
     }
 
     public String  getHashCode() {
         return hashCode;
     }
 
+    /**
+     * Get the blob ids of all the files of this commit, by path.  They are
+     * read from the trees once, so the map must not be changed.
+     */
     public TreeMap<String, String> getBlobs() {
+        if (blobs == null) {
+            TreeMap<String, String> files = new TreeMap<>();
+            Tree.load(objectsDir, tree).flatten(objectsDir, "", files);
+            blobs = files;
+        }
         return blobs;
     }
 
+    /** Get the id of the root tree, or null if this commit lists its blobs. */
+    public String getTreeId() {
+        return tree;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -88,40 +202,97 @@ public class Commit implements Serializable {
         this.firstParent = firstParent;
     }
 
+    /** Get the id of the first parent, or null for the initial commit. */
+    public String getFirstParentId() {
+        return firstParent;
+    }
+
+    /** Get the id of the second parent, or null unless this is a merge commit. */
+    public String getSecondParentId() {
+        return secondParent;
+    }
+
     public Commit getFirstParent() {
         if (firstParent == null) {
             return null;
         }
-        File parentCommit = Utils.join(COMMIT_DIR, this.firstParent);
-        return Utils.readObject(parentCommit, Commit.class);
+        return load(firstParent);
     }
 
     public Commit getSecondParent() {
         if (secondParent == null) {
             return null;
         }
-        File parentCommit = Utils.join(COMMIT_DIR, this.secondParent);
-        return Utils.readObject(parentCommit, Commit.class);
+        return load(secondParent);
     }
 
-    public void printCommit() {
-        System.out.println("===");
-        System.out.println("commit " + hashCode);
-        System.out.println("Date: " + dateToTimeStamp(timesTamp));
-        System.out.println(message);
-        System.out.println();
+    /**
+     * Write this commit as in log.
+     * @param out where the commit is written.
+     */
+    public void printCommit(PrintWriter out) {
+        printCommit(out, hashCode, timesTamp, message);
     }
 
-    private static String dateToTimeStamp(Date date) {
-        DateFormat dateFormat = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
-        return dateFormat.format(date);
+    /**
+     * Write a commit as in log, from its metadata alone.
+     * @param out where the commit is written.
+     * @param id the id of the commit.
+     * @param date the time of the commit.
+     * @param message the message of the commit.
+     */
+    public static void printCommit(PrintWriter out, String id, Date date, String message) {
+        out.print("===\ncommit ");
+        out.print(id);
+        out.print("\nDate: ");
+        out.print(DATE_FORMAT.format(date.toInstant().atZone(ZoneId.systemDefault())));
+        out.print('\n');
+        out.print(message);
+        out.print("\n\n");
     }
 
     public Date getTimestamp() {
         return timesTamp;
     }
 
-    public void setSecondParent(String secondParent) {
-        this.secondParent = secondParent;
+    @Override
+    public byte codecTag() {
+        return tree != null ? Codec.TREE_COMMIT : Codec.COMMIT;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Codec.writeId(out, hashCode);
+        Codec.writeString(out, message);
+        out.writeLong(timesTamp.getTime());
+        Codec.writeId(out, firstParent);
+        Codec.writeId(out, secondParent);
+        if (tree != null) {
+            Codec.writeId(out, tree);
+        } else {
+            Codec.writeIdMap(out, blobs);
+        }
+    }
+
+    /** Read a commit that lists its blobs, as older versions wrote. */
+    static Commit decode(DataInputStream in) throws IOException {
+        String hashCode = Codec.readId(in);
+        String message = Codec.readString(in);
+        Date timesTamp = new Date(in.readLong());
+        String firstParent = Codec.readId(in);
+        String secondParent = Codec.readId(in);
+        TreeMap<String, String> blobs = Codec.readIdMap(in);
+        return new Commit(message, timesTamp, firstParent, secondParent, hashCode, null, blobs);
+    }
+
+    /** Read a commit that names its root tree, written by encode. */
+    static Commit decodeTree(DataInputStream in) throws IOException {
+        String hashCode = Codec.readId(in);
+        String message = Codec.readString(in);
+        Date timesTamp = new Date(in.readLong());
+        String firstParent = Codec.readId(in);
+        String secondParent = Codec.readId(in);
+        String tree = Codec.readId(in);
+        return new Commit(message, timesTamp, firstParent, secondParent, hashCode, tree, null);
     }
 }
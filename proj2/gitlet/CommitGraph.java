@@ -0,0 +1,591 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The commit graph of a repository, kept in the file .gitlet/commit-graph.
+ * The file is the magic number and the version, followed by one fixed-size
+ * record per commit: its raw id, the positions of its two parents in the file
+ * (or -1), its generation number and its time.  A commit is always recorded
+ * after its parents, so a new commit is added by appending one record.
+ * The generation number of a root commit is 1, and that of any other commit
+ * is one more than the largest generation of its parents; a commit can only
+ * be an ancestor of commits with a larger generation.
+ * Beside the graph, the file .gitlet/commit-bitmaps keeps the set of the
+ * ancestors of some commits as compressed bitmaps over the positions, see
+ * Bitmap: the branch tips and, along their first parents, every commit whose
+ * generation is a multiple of BITMAP_INTERVAL, as repack and gc chose them.
+ * A walk down the graph stops at a commit with a bitmap and takes its
+ * ancestors from the bitmap, so that it goes through few commits however
+ * deep the history is.  The file is the magic number, the version and the
+ * number of bitmaps, then for each its commit's raw id and position and the
+ * bitmap.  A bitmap whose position no longer holds its commit, after gc
+ * dropped commits, is stale, and the bitmaps are then not used.
+ *  @Author Zhang, Xiaochen
+ */
+public class CommitGraph {
+    /** The name of the commit graph file in a .gitlet directory. */
+    static final String FILE_NAME = "commit-graph";
+    /** The magic number at the head of the file, "GCGR". */
+    private static final int MAGIC = 0x47434752;
+    /** The version of the file format. */
+    private static final int VERSION = 1;
+    /** The size of the header: magic and version. */
+    private static final int HEADER_SIZE = 8;
+    /** The raw length of a commit id. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** The size of a record: id, two parents, generation and time. */
+    private static final int RECORD_SIZE = ID_BYTES + 4 + 4 + 4 + 8;
+    /** The name of the bitmaps file in a .gitlet directory. */
+    static final String BITMAPS_NAME = "commit-bitmaps";
+    /** The magic number at the head of the bitmaps file, "GCBM". */
+    private static final int BITMAPS_MAGIC = 0x4743424d;
+    /** The version of the bitmaps file format. */
+    private static final int BITMAPS_VERSION = 1;
+    /** The distance in generations between the commits given bitmaps along a first-parent chain. */
+    private static final int BITMAP_INTERVAL = 100;
+    /** The position of a missing parent. */
+    static final int NONE = -1;
+    /** The graphs opened by this process, one per .gitlet directory. */
+    private static final Map<File, CommitGraph> OPENED = new HashMap<>();
+
+    /** The marks of the merge base search. */
+    private static final byte FROM_A = 1;
+    private static final byte FROM_B = 2;
+    private static final byte STALE = 4;
+    private static final byte RESULT = 8;
+
+    /** The .gitlet directory of this graph. */
+    private final File gitletDir;
+    /** The commit graph file. */
+    private final File graphFile;
+    /** The number of commits in the graph. */
+    private int size;
+    /** The ids of the commits, by position. */
+    private String[] ids = new String[64];
+    /** The positions of the first and the second parents, or NONE. */
+    private int[] firstParents = new int[64];
+    private int[] secondParents = new int[64];
+    /** The generation numbers. */
+    private int[] generations = new int[64];
+    /** The commit times, in milliseconds. */
+    private long[] times = new long[64];
+    /** The position of every commit, by id. */
+    private final Map<String, Integer> positions = new HashMap<>();
+    /** The graph file as this graph last read or wrote it. */
+    private FileStamp stamp;
+    /** The ancestors of some commits, by position, or null until they are read. */
+    private Map<Integer, Bitmap> bitmaps;
+
+    private CommitGraph(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.graphFile = Utils.join(gitletDir, FILE_NAME);
+    }
+
+    /**
+     * Get the commit graph of the given .gitlet directory.  A repository made
+     * before the commit graph gets one here, built from all of its commits.
+     * @param gitletDir the .gitlet directory, local or remote.
+     */
+    public static synchronized CommitGraph load(File gitletDir) {
+        File key = gitletDir.getAbsoluteFile();
+        CommitGraph graph = OPENED.get(key);
+        if (graph == null) {
+            graph = new CommitGraph(key);
+            OPENED.put(key, graph);
+            if (graph.graphFile.isFile()) {
+                graph.read();
+            } else {
+                graph.build();
+            }
+            graph.stamp = FileStamp.of(graph.graphFile);
+        }
+        return graph;
+    }
+
+    /** Forget the graphs whose files another process has changed since they were read. */
+    static synchronized void refresh() {
+        OPENED.values().removeIf(graph -> graph.stamp.isStale(graph.graphFile));
+    }
+
+    /** Take new stamps of the files of the graphs, once this process wrote them in place. */
+    static synchronized void restamp() {
+        for (CommitGraph graph : OPENED.values()) {
+            graph.stamp = FileStamp.of(graph.graphFile);
+        }
+    }
+
+    /** Forget all the graphs opened so far, so that they are read again when next loaded. */
+    static synchronized void forget() {
+        OPENED.clear();
+    }
+
+    /** Read the records of the graph file. A torn last record is ignored. */
+    private void read() {
+        ByteBuffer buffer = ByteBuffer.wrap(Utils.readContents(graphFile));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION) {
+            throw Utils.error("Corrupted commit graph %s.", graphFile);
+        }
+        byte[] raw = new byte[ID_BYTES];
+        while (buffer.remaining() >= RECORD_SIZE) {
+            buffer.get(raw);
+            int position = size;
+            grow();
+            ids[position] = Utils.toHex(raw);
+            firstParents[position] = buffer.getInt();
+            secondParents[position] = buffer.getInt();
+            generations[position] = buffer.getInt();
+            times[position] = buffer.getLong();
+            positions.put(ids[position], position);
+            size += 1;
+        }
+    }
+
+    /** Write a new graph file holding every commit of the repository. */
+    private void build() {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(graphFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        for (String id : Commit.allCommitIds(gitletDir)) {
+            add(id);
+        }
+    }
+
+    /** Make room for one more record in the arrays. */
+    private void grow() {
+        if (size == ids.length) {
+            int capacity = 2 * size;
+            ids = Arrays.copyOf(ids, capacity);
+            firstParents = Arrays.copyOf(firstParents, capacity);
+            secondParents = Arrays.copyOf(secondParents, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+    }
+
+    /**
+     * Add a commit to the graph, after any of its ancestors that are
+     * not in the graph yet.
+     * @param commit the commit, already saved in this repository.
+     */
+    public void add(Commit commit) {
+        if (!positions.containsKey(commit.getHashCode())) {
+            add(commit.getHashCode());
+        }
+    }
+
+    /**
+     * Add the commit with the given id and its missing ancestors.
+     * The ancestors are visited with an explicit stack, since a history
+     * may be far deeper than the call stack.
+     */
+    private void add(String commitId) {
+        File objectsDir = Utils.join(gitletDir, "objects");
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        Deque<Commit> stack = new ArrayDeque<>();
+        Set<String> pending = new HashSet<>();
+        pushIfMissing(stack, pending, objectsDir, commitId);
+        try {
+            while (!stack.isEmpty()) {
+                Commit commit = stack.peek();
+                if (pushIfMissing(stack, pending, objectsDir, commit.getFirstParentId())
+                        || pushIfMissing(stack, pending, objectsDir, commit.getSecondParentId())) {
+                    continue;
+                }
+                stack.pop();
+                append(commit, out);
+            }
+            out.close();
+            if (!Journal.append(graphFile, records.toByteArray())) {
+                Files.write(graphFile.toPath(), records.toByteArray(), StandardOpenOption.APPEND);
+            }
+            stamp = FileStamp.of(graphFile);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Push the commit with the given id onto STACK if it is neither in the graph
+     * nor already PENDING.  Commits whose objects are missing, such as the other
+     * side of a merge that was never fetched, are left out of the graph.
+     * @return true if the commit was pushed.
+     */
+    private boolean pushIfMissing(Deque<Commit> stack, Set<String> pending,
+                                  File objectsDir, String commitId) {
+        if (commitId == null || positions.containsKey(commitId)
+                || !Pack.exists(objectsDir, commitId) || !pending.add(commitId)) {
+            return false;
+        }
+        stack.push(Commit.load(objectsDir, commitId));
+        return true;
+    }
+
+    /** Record COMMIT, whose parents are all in the graph, and write its record to OUT. */
+    private void append(Commit commit, DataOutputStream out) throws IOException {
+        int first = position(commit.getFirstParentId());
+        int second = position(commit.getSecondParentId());
+        int generation = 1;
+        if (first != NONE) {
+            generation = Math.max(generation, generations[first] + 1);
+        }
+        if (second != NONE) {
+            generation = Math.max(generation, generations[second] + 1);
+        }
+        int position = size;
+        grow();
+        ids[position] = commit.getHashCode();
+        firstParents[position] = first;
+        secondParents[position] = second;
+        generations[position] = generation;
+        times[position] = commit.getTimestamp().getTime();
+        positions.put(commit.getHashCode(), position);
+        size += 1;
+        writeRecord(position, out);
+    }
+
+    /** Write the record of the commit at POSITION to OUT. */
+    private void writeRecord(int position, DataOutputStream out) throws IOException {
+        out.write(Utils.fromHex(ids[position]));
+        out.writeInt(firstParents[position]);
+        out.writeInt(secondParents[position]);
+        out.writeInt(generations[position]);
+        out.writeLong(times[position]);
+    }
+
+    /**
+     * Drop the commits that are not kept, such as the ones gc found
+     * unreachable, and write the graph anew, to the journal or else to a
+     * temporary file renamed over the graph file.  The parents of a kept
+     * commit are kept as well, so the records stay in order.
+     * @param keep the positions of the commits to keep.
+     */
+    void retain(BitSet keep) {
+        int[] moved = new int[size];
+        int kept = 0;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + size * RECORD_SIZE);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < size; i++) {
+                if (!keep.get(i)) {
+                    positions.remove(ids[i]);
+                    continue;
+                }
+                moved[i] = kept;
+                ids[kept] = ids[i];
+                firstParents[kept] = firstParents[i] == NONE ? NONE : moved[firstParents[i]];
+                secondParents[kept] = secondParents[i] == NONE ? NONE : moved[secondParents[i]];
+                generations[kept] = generations[i];
+                times[kept] = times[i];
+                positions.put(ids[kept], kept);
+                writeRecord(kept, out);
+                kept += 1;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Arrays.fill(ids, kept, size, null);
+        size = kept;
+        bitmaps = null;
+        if (!Journal.write(graphFile, bytes.toByteArray())) {
+            File tmp = Utils.join(gitletDir, FILE_NAME + ".tmp");
+            try {
+                Files.write(tmp.toPath(), bytes.toByteArray());
+                Files.move(tmp.toPath(), graphFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        stamp = FileStamp.of(graphFile);
+    }
+
+    /**
+     * Get the position of a commit in the graph.
+     * @param commitId the id of the commit, or null.
+     * @return the position, or NONE if the commit is not in the graph.
+     */
+    int position(String commitId) {
+        if (commitId == null) {
+            return NONE;
+        }
+        Integer position = positions.get(commitId);
+        return position == null ? NONE : position;
+    }
+
+    /** Get the number of commits in the graph. */
+    int size() {
+        return size;
+    }
+
+    /** Get the id of the commit at POSITION. */
+    String id(int position) {
+        return ids[position];
+    }
+
+    /** Get the position of the first parent of the commit at POSITION, or NONE. */
+    int firstParent(int position) {
+        return firstParents[position];
+    }
+
+    /** Get the position of the second parent of the commit at POSITION, or NONE. */
+    int secondParent(int position) {
+        return secondParents[position];
+    }
+
+    /** Check if the commit with the given id is in the graph. */
+    public boolean contains(String commitId) {
+        return positions.containsKey(commitId);
+    }
+
+    /** Get the generation number of the commit with the given id, or 0 if unknown. */
+    public int generation(String commitId) {
+        int position = position(commitId);
+        return position == NONE ? 0 : generations[position];
+    }
+
+    /**
+     * Find the best common ancestor of two commits, the split point of a merge.
+     * Both commits are walked towards the root at the same time, always
+     * visiting the commit with the largest generation first, so that a commit
+     * is reached only after all of its descendants that are reachable from
+     * either side.  A commit reached from both sides is a common ancestor;
+     * its own ancestors are marked stale, and the walk stops as soon as
+     * only stale commits are left.  It therefore never goes below the
+     * generation of the common ancestors it finds.  When there are several
+     * best common ancestors, as after a criss-cross merge, the one with the
+     * largest generation and then the latest time is chosen.
+     * @param a the id of one commit.
+     * @param b the id of the other commit.
+     * @return the id of the split point, or null if there is none.
+     */
+    public String mergeBase(String a, String b) {
+        int start = position(a);
+        int end = position(b);
+        if (start == NONE || end == NONE) {
+            return null;
+        }
+        if (start == end) {
+            return a;
+        }
+        Map<Integer, Byte> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(this::compareNewestFirst);
+        List<Integer> results = new ArrayList<>();
+        marks.put(start, FROM_A);
+        marks.put(end, FROM_B);
+        queue.add(start);
+        queue.add(end);
+        while (hasActive(queue, marks)) {
+            int commit = queue.poll();
+            byte flags = marks.get(commit);
+            byte propagate = (byte) (flags & (FROM_A | FROM_B | STALE));
+            if (propagate == (FROM_A | FROM_B)) {
+                if ((flags & RESULT) == 0) {
+                    marks.put(commit, (byte) (flags | RESULT));
+                    results.add(commit);
+                }
+                propagate |= STALE;
+            }
+            for (int parent : new int[]{firstParents[commit], secondParents[commit]}) {
+                if (parent == NONE) {
+                    continue;
+                }
+                byte old = marks.getOrDefault(parent, (byte) 0);
+                if ((old & propagate) != propagate) {
+                    marks.put(parent, (byte) (old | propagate));
+                    queue.add(parent);
+                }
+            }
+        }
+        int best = NONE;
+        for (int result : results) {
+            if ((marks.get(result) & STALE) == 0
+                    && (best == NONE || compareNewestFirst(result, best) < 0)) {
+                best = result;
+            }
+        }
+        return best == NONE ? null : ids[best];
+    }
+
+    /**
+     * Check if one commit is an ancestor of another one, or the same commit.
+     * Only commits with a generation at least that of the ancestor are visited,
+     * and none below a commit with a bitmap, which answers for its ancestors.
+     * @param ancestor the id of the possible ancestor.
+     * @param descendant the id of the possible descendant.
+     */
+    public boolean isAncestor(String ancestor, String descendant) {
+        int target = position(ancestor);
+        int start = position(descendant);
+        if (target == NONE || start == NONE) {
+            return false;
+        }
+        int floor = generations[target];
+        Set<Integer> visited = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            int commit = stack.pop();
+            if (commit == target) {
+                return true;
+            }
+            if (generations[commit] <= floor || !visited.add(commit)) {
+                continue;
+            }
+            Bitmap bitmap = bitmaps().get(commit);
+            if (bitmap != null) {
+                if (bitmap.get(target)) {
+                    return true;
+                }
+                continue;
+            }
+            for (int parent : new int[]{firstParents[commit], secondParents[commit]}) {
+                if (parent != NONE) {
+                    stack.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the commits that some commits reach, themselves included.
+     * @param starts the positions of the commits, any of which may be NONE.
+     * @param stop the commits where the walk stops, or null.
+     * @return the positions of the commits reached before a stop.  Where
+     *         the walk takes the ancestors of a commit from its bitmap, some
+     *         commits beyond a stop may be among them as well.
+     */
+    BitSet reachable(Collection<Integer> starts, BitSet stop) {
+        BitSet marks = new BitSet(size);
+        Deque<Integer> stack = new ArrayDeque<>(starts);
+        while (!stack.isEmpty()) {
+            int position = stack.pop();
+            if (position == NONE || marks.get(position) || (stop != null && stop.get(position))) {
+                continue;
+            }
+            Bitmap bitmap = bitmaps().get(position);
+            if (bitmap != null) {
+                bitmap.orInto(marks);
+                continue;
+            }
+            marks.set(position);
+            stack.push(firstParents[position]);
+            stack.push(secondParents[position]);
+        }
+        return marks;
+    }
+
+    /**
+     * Choose the commits to give bitmaps, from the given branch tips, make
+     * their bitmaps and write the bitmaps file anew, to the journal or else
+     * to a temporary file renamed over it.  The bitmaps are made oldest
+     * first, so that each one is made from the ones below it.
+     * @param tips the ids of the commits the branches point to.
+     */
+    void writeBitmaps(Collection<String> tips) {
+        BitSet chosen = new BitSet(size);
+        BitSet walked = new BitSet(size);
+        for (String tip : tips) {
+            int position = position(tip);
+            if (position != NONE) {
+                chosen.set(position);
+            }
+            while (position != NONE && !walked.get(position)) {
+                walked.set(position);
+                if (generations[position] % BITMAP_INTERVAL == 0) {
+                    chosen.set(position);
+                }
+                position = firstParents[position];
+            }
+        }
+        bitmaps = new HashMap<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(BITMAPS_MAGIC);
+            out.writeInt(BITMAPS_VERSION);
+            out.writeInt(chosen.cardinality());
+            for (int i = chosen.nextSetBit(0); i >= 0; i = chosen.nextSetBit(i + 1)) {
+                Bitmap bitmap = Bitmap.of(reachable(List.of(i), null));
+                bitmaps.put(i, bitmap);
+                out.write(Utils.fromHex(ids[i]));
+                out.writeInt(i);
+                bitmap.write(out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        File bitmapsFile = Utils.join(gitletDir, BITMAPS_NAME);
+        if (!Journal.write(bitmapsFile, bytes.toByteArray())) {
+            File tmp = Utils.join(gitletDir, BITMAPS_NAME + ".tmp");
+            try {
+                Files.write(tmp.toPath(), bytes.toByteArray());
+                Files.move(tmp.toPath(), bitmapsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Get the bitmaps, reading the bitmaps file when first needed; none if it is stale. */
+    private Map<Integer, Bitmap> bitmaps() {
+        if (bitmaps != null) {
+            return bitmaps;
+        }
+        bitmaps = new HashMap<>();
+        File bitmapsFile = Utils.join(gitletDir, BITMAPS_NAME);
+        if (!bitmapsFile.isFile() && Journal.read(bitmapsFile) == null) {
+            return bitmaps;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Utils.readContents(bitmapsFile));
+        if (buffer.remaining() < 12 || buffer.getInt() != BITMAPS_MAGIC
+                || buffer.getInt() != BITMAPS_VERSION) {
+            throw Utils.error("Corrupted commit bitmaps %s.", bitmapsFile);
+        }
+        int count = buffer.getInt();
+        byte[] raw = new byte[ID_BYTES];
+        Map<Integer, Bitmap> read = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            buffer.get(raw);
+            int position = buffer.getInt();
+            Bitmap bitmap = Bitmap.read(buffer);
+            if (position >= size || !ids[position].equals(Utils.toHex(raw))) {
+                return bitmaps;
+            }
+            read.put(position, bitmap);
+        }
+        bitmaps = read;
+        return bitmaps;
+    }
+
+    /** Check if some commit in QUEUE is not stale, so the walk must go on. */
+    private static boolean hasActive(PriorityQueue<Integer> queue, Map<Integer, Byte> marks) {
+        for (int commit : queue) {
+            if ((marks.get(commit) & STALE) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Order positions by descending generation, then by descending time. */
+    private int compareNewestFirst(int x, int y) {
+        if (generations[x] != generations[y]) {
+            return Integer.compare(generations[y], generations[x]);
+        }
+        return Long.compare(times[y], times[x]);
+    }
+}
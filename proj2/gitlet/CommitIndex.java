@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * The sorted index of all the commit ids of a repository, kept in the file
+ * .gitlet/commit-ids, which resolves abbreviated commit ids.
+ * The file is the magic number, the version and the number of sorted ids,
+ * followed by the sorted raw ids and then by the raw ids of the newest commits
+ * in the order they were saved.  A new commit is added by appending its id;
+ * once too many ids are unsorted, the whole file is rewritten in order.
+ * A prefix is looked up with a binary search of the sorted ids in the mapped
+ * file plus a scan of the few unsorted ones.
+ *  @Author Zhang, Xiaochen
+ */
+public class CommitIndex {
+    /** The name of the index file in a .gitlet directory. */
+    static final String FILE_NAME = "commit-ids";
+    /** The magic number at the head of the file, "GCID". */
+    private static final int MAGIC = 0x47434944;
+    /** The version of the file format. */
+    private static final int VERSION = 1;
+    /** The size of the header: magic, version and the number of sorted ids. */
+    private static final int HEADER_SIZE = 12;
+    /** The raw length of a commit id. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** The largest number of unsorted ids before the file is sorted again. */
+    private static final int MAX_UNSORTED = 256;
+    /** The indexes opened by this process, one per .gitlet directory. */
+    private static final Map<File, CommitIndex> OPENED = new HashMap<>();
+
+    /** The .gitlet directory of this index. */
+    private final File gitletDir;
+    /** The index file. */
+    private final File indexFile;
+    /** The mapped index file. */
+    private ByteBuffer sorted;
+    /** The number of sorted ids. */
+    private int sortedCount;
+    /** The unsorted ids, newest last. */
+    private final List<String> unsorted = new ArrayList<>();
+    /** The index file as this index last read or wrote it. */
+    private FileStamp stamp;
+
+    private CommitIndex(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.indexFile = Utils.join(gitletDir, FILE_NAME);
+    }
+
+    /**
+     * Get the commit id index of the given .gitlet directory.  A repository made
+     * before the index gets one here, built from all of its commits.
+     * @param gitletDir the .gitlet directory, local or remote.
+     */
+    public static synchronized CommitIndex load(File gitletDir) {
+        File key = gitletDir.getAbsoluteFile();
+        CommitIndex index = OPENED.get(key);
+        if (index == null) {
+            index = new CommitIndex(key);
+            OPENED.put(key, index);
+            if (!index.indexFile.isFile()) {
+                index.unsorted.addAll(Commit.allCommitIds(key));
+                index.rewrite();
+            }
+            index.map();
+        }
+        return index;
+    }
+
+    /** Forget the indexes whose files another process has changed since they were read. */
+    static synchronized void refresh() {
+        OPENED.values().removeIf(index -> index.stamp.isStale(index.indexFile));
+    }
+
+    /** Take new stamps of the files of the indexes, once this process wrote them in place. */
+    static synchronized void restamp() {
+        for (CommitIndex index : OPENED.values()) {
+            index.stamp = FileStamp.of(index.indexFile);
+        }
+    }
+
+    /** Forget all the indexes opened so far, so that they are read again when next loaded. */
+    static synchronized void forget() {
+        OPENED.clear();
+    }
+
+    /**
+     * Map the index file and read its unsorted ids.  An index the running
+     * command rewrote is read from its journal instead.
+     */
+    private void map() {
+        byte[] pending = Journal.read(indexFile);
+        try (FileChannel channel = pending != null ? null
+                : FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = pending != null ? ByteBuffer.wrap(pending)
+                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                throw Utils.error("Corrupted commit id index %s.", indexFile);
+            }
+            sorted = buffer;
+            sortedCount = buffer.getInt(8);
+            unsorted.clear();
+            byte[] raw = new byte[ID_BYTES];
+            /* A torn last id is ignored. */
+            for (int at = HEADER_SIZE + sortedCount * ID_BYTES;
+                 at + ID_BYTES <= buffer.limit(); at += ID_BYTES) {
+                buffer.get(at, raw);
+                unsorted.add(Utils.toHex(raw));
+            }
+            stamp = FileStamp.of(indexFile);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Add the id of a newly saved commit.
+     * @param commitId the full commit id.
+     */
+    public void add(String commitId) {
+        if (contains(commitId)) {
+            return;
+        }
+        unsorted.add(commitId);
+        if (unsorted.size() > MAX_UNSORTED) {
+            rewrite();
+            map();
+            return;
+        }
+        try {
+            if (!Journal.append(indexFile, Utils.fromHex(commitId))) {
+                Files.write(indexFile.toPath(), Utils.fromHex(commitId), StandardOpenOption.APPEND);
+            }
+            stamp = FileStamp.of(indexFile);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Write all the ids, sorted and without duplicates, to the journal, or
+     * else to a temporary file renamed over the index file.
+     */
+    private void rewrite() {
+        TreeSet<String> ids = new TreeSet<>(unsorted);
+        for (int i = 0; i < sortedCount; i++) {
+            ids.add(idAt(i));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + ids.size() * ID_BYTES);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            for (String id : ids) {
+                out.write(Utils.fromHex(id));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (Journal.write(indexFile, bytes.toByteArray())) {
+            return;
+        }
+        File tmp = Utils.join(gitletDir, FILE_NAME + ".tmp");
+        try {
+            Files.write(tmp.toPath(), bytes.toByteArray());
+            Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Drop the ids of the commits that are not kept, such as the ones gc
+     * found unreachable, and write the index anew, all sorted.
+     * @param keep tells if the commit with a given id is kept.
+     */
+    public void retain(Predicate<String> keep) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < sortedCount; i++) {
+            ids.add(idAt(i));
+        }
+        ids.addAll(unsorted);
+        ids.removeIf(keep.negate());
+        unsorted.clear();
+        unsorted.addAll(ids);
+        sortedCount = 0;
+        rewrite();
+        map();
+    }
+
+    /** Get the sorted id at position I. */
+    private String idAt(int i) {
+        byte[] raw = new byte[ID_BYTES];
+        sorted.get(HEADER_SIZE + i * ID_BYTES, raw);
+        return Utils.toHex(raw);
+    }
+
+    /**
+     * Find the commit ids starting with the given prefix.
+     * @param prefix an abbreviated or full commit id.
+     * @param limit the largest number of ids wanted, such as 2 to tell a unique
+     *              prefix from an ambiguous one.
+     * @return up to LIMIT matching ids, in order.
+     */
+    public List<String> findMatches(String prefix, int limit) {
+        prefix = prefix.toLowerCase();
+        TreeSet<String> matches = new TreeSet<>();
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH
+                || !prefix.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return new ArrayList<>();
+        }
+        /* The smallest id with the prefix is the prefix padded with zeros. */
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < Utils.UID_LENGTH) {
+            padded.append('0');
+        }
+        byte[] low = Utils.fromHex(padded.toString());
+        int lo = 0;
+        int hi = sortedCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareSorted(mid, low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < sortedCount && matches.size() < limit; i++) {
+            String id = idAt(i);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            matches.add(id);
+        }
+        for (String id : unsorted) {
+            if (id.startsWith(prefix)) {
+                matches.add(id);
+            }
+        }
+        List<String> result = new ArrayList<>(matches);
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /** Compare the sorted id at position I with the raw id KEY, as unsigned bytes. */
+    private int compareSorted(int i, byte[] key) {
+        int base = HEADER_SIZE + i * ID_BYTES;
+        for (int k = 0; k < ID_BYTES; k++) {
+            int cmp = Integer.compare(sorted.get(base + k) & 0xff, key[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Check if the commit with the given full id is in the index. */
+    public boolean contains(String commitId) {
+        return commitId.length() == Utils.UID_LENGTH && !findMatches(commitId, 1).isEmpty();
+    }
+}
@@ -0,0 +1,312 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * The metadata of every commit of a repository, in the order the commits
+ * were saved, kept in the file .gitlet/commit-log.  global-log and find read
+ * it from start to end instead of reading every commit object.
+ * The file is the magic number and the version, followed by one record per
+ * commit: its id, its time, its two parents and its message.
+ * Besides the log, the directory .gitlet/messages has one file per distinct
+ * commit message, named by the SHA-1 hash of the message, listing the ids of
+ * the commits with that message, so that find is a single lookup.
+ *  @Author Zhang, Xiaochen
+ */
+public class CommitLog {
+    /** The name of the log file in a .gitlet directory. */
+    static final String FILE_NAME = "commit-log";
+    /** The name of the message index directory in a .gitlet directory. */
+    static final String MESSAGES_DIR_NAME = "messages";
+    /** The magic number at the head of the file, "GCLG". */
+    private static final int MAGIC = 0x47434c47;
+    /** The version of the file format. */
+    private static final int VERSION = 1;
+
+    /** The metadata of one commit. */
+    public static class Entry {
+        /** The id of the commit. */
+        private final String id;
+        /** The time of the commit. */
+        private final Date timestamp;
+        /** The ids of the parents, or null. */
+        private final String firstParent;
+        private final String secondParent;
+        /** The message of the commit. */
+        private final String message;
+
+        Entry(String id, Date timestamp, String firstParent, String secondParent, String message) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.firstParent = firstParent;
+            this.secondParent = secondParent;
+            this.message = message;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Date getTimestamp() {
+            return timestamp;
+        }
+
+        public String getFirstParent() {
+            return firstParent;
+        }
+
+        public String getSecondParent() {
+            return secondParent;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /** The .gitlet directory of this log. */
+    private final File gitletDir;
+    /** The log file. */
+    private final File logFile;
+    /** The message index directory. */
+    private final File messagesDir;
+
+    private CommitLog(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.logFile = Utils.join(gitletDir, FILE_NAME);
+        this.messagesDir = Utils.join(gitletDir, MESSAGES_DIR_NAME);
+    }
+
+    /**
+     * Get the commit log of the given .gitlet directory.  Repositories made
+     * before the log listed their commit ids in the file .gitlet/commits, or
+     * kept a copy of every commit in objects/commits; their log and message
+     * index are built here from those commits.
+     * @param gitletDir the .gitlet directory, local or remote.
+     */
+    public static CommitLog load(File gitletDir) {
+        CommitLog log = new CommitLog(gitletDir);
+        if (!Journal.exists(log.logFile)) {
+            log.migrate();
+        }
+        return log;
+    }
+
+    /**
+     * Build the log and the message index from the old commit lists, through
+     * the journal if there is one.  Without one, the message index is written
+     * first and the log, whose existence ends the migration, is renamed into
+     * place last, before the old list is deleted.
+     */
+    private void migrate() {
+        Set<String> ids = new LinkedHashSet<>();
+        File commitList = Utils.join(gitletDir, "commits");
+        if (commitList.isFile()) {
+            for (String id : Utils.readContentsAsString(commitList).split("\n")) {
+                if (!id.isEmpty()) {
+                    ids.add(id);
+                }
+            }
+        }
+        List<String> legacy = Utils.plainFilenamesIn(Utils.join(gitletDir, "objects", "commits"));
+        if (legacy != null) {
+            ids.addAll(legacy);
+        }
+        messagesDir.mkdir();
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Map<String, StringBuilder> messages = new LinkedHashMap<>();
+        try (DataOutputStream out = new DataOutputStream(log)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String id : ids) {
+                Commit commit = Commit.load(Utils.join(gitletDir, "objects"), id);
+                writeEntry(out, commit);
+                messages.computeIfAbsent(commit.getMessage(), message -> new StringBuilder())
+                        .append(id).append('\n');
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        /* Written whole, so that what an interrupted migration left is replaced. */
+        for (Map.Entry<String, StringBuilder> message : messages.entrySet()) {
+            replace(messageFile(message.getKey()),
+                    message.getValue().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        replace(logFile, log.toByteArray());
+        if (commitList.isFile() && !Journal.delete(commitList)) {
+            commitList.delete();
+        }
+    }
+
+    /**
+     * Append a newly saved commit to the log and the message index.
+     * @param commit the commit.
+     */
+    public void add(Commit commit) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            writeEntry(out, commit);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!Journal.append(logFile, record.toByteArray())) {
+            try {
+                Files.write(logFile.toPath(), record.toByteArray(), StandardOpenOption.APPEND);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        addMessage(commit);
+    }
+
+    private static void writeEntry(DataOutputStream out, Commit commit) throws IOException {
+        Codec.writeId(out, commit.getHashCode());
+        out.writeLong(commit.getTimestamp().getTime());
+        Codec.writeId(out, commit.getFirstParentId());
+        Codec.writeId(out, commit.getSecondParentId());
+        Codec.writeString(out, commit.getMessage());
+    }
+
+    /**
+     * Drop the commits that are not kept, such as the ones gc found
+     * unreachable, from the log and the message index.  The files are
+     * written anew to the journal, or else to temporary files renamed over them.
+     * @param keep tells if the commit with a given id is kept.
+     */
+    public void retain(Predicate<String> keep) {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        Set<String> droppedMessages = new HashSet<>();
+        try (DataOutputStream out = new DataOutputStream(log)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            forEach(entry -> {
+                if (!keep.test(entry.getId())) {
+                    droppedMessages.add(entry.getMessage());
+                    return;
+                }
+                try {
+                    Codec.writeId(out, entry.getId());
+                    out.writeLong(entry.getTimestamp().getTime());
+                    Codec.writeId(out, entry.getFirstParent());
+                    Codec.writeId(out, entry.getSecondParent());
+                    Codec.writeString(out, entry.getMessage());
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        replace(logFile, log.toByteArray());
+        for (String message : droppedMessages) {
+            StringBuilder ids = new StringBuilder();
+            for (String id : findByMessage(message)) {
+                if (keep.test(id)) {
+                    ids.append(id).append('\n');
+                }
+            }
+            File file = messageFile(message);
+            if (ids.length() > 0) {
+                replace(file, ids.toString().getBytes(StandardCharsets.UTF_8));
+            } else if (!Journal.delete(file)) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Replace the content of FILE with CONTENT, through the journal if there is one. */
+    private static void replace(File file, byte[] content) {
+        if (Journal.write(file, content)) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), content);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Add the id of COMMIT to the message index file of its message. */
+    private void addMessage(Commit commit) {
+        File file = messageFile(commit.getMessage());
+        byte[] line = (commit.getHashCode() + "\n").getBytes(StandardCharsets.UTF_8);
+        if (Journal.append(file, line)) {
+            return;
+        }
+        try {
+            Files.write(file.toPath(), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Get the message index file of the message MESSAGE. */
+    private File messageFile(String message) {
+        return Utils.join(messagesDir, Utils.sha1(message));
+    }
+
+    /**
+     * Pass every entry of the log to ACTION, oldest first, reading the log
+     * as a stream, with the entries the running command appended.  A torn
+     * last record is ignored.
+     * @param action what to do with each entry.
+     */
+    public void forEach(Consumer<Entry> action) {
+        InputStream pending = Journal.open(logFile);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                pending != null ? pending : new FileInputStream(logFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupted commit log %s.", logFile);
+            }
+            while (true) {
+                Entry entry;
+                try {
+                    String id = Codec.readId(in);
+                    Date timestamp = new Date(in.readLong());
+                    String firstParent = Codec.readId(in);
+                    String secondParent = Codec.readId(in);
+                    entry = new Entry(id, timestamp, firstParent, secondParent, Codec.readString(in));
+                } catch (EOFException excp) {
+                    return;
+                }
+                action.accept(entry);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Get the ids of all the commits, oldest first. */
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        forEach(entry -> ids.add(entry.getId()));
+        return ids;
+    }
+
+    /**
+     * Get the ids of the commits with the given message, oldest first.
+     * @param message the whole commit message.
+     */
+    public List<String> findByMessage(String message) {
+        File file = messageFile(message);
+        List<String> ids = new ArrayList<>();
+        if (Journal.exists(file)) {
+            for (String id : Utils.readContentsAsString(file).split("\n")) {
+                if (!id.isEmpty()) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,299 @@
+package gitlet;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The optional daemon of a repository, started with "gitlet daemon" and
+ * stopped with "gitlet daemon stop"; "gitlet daemon status" prints how its
+ * caches are used.  While it runs, it listens on the socket
+ * .gitlet/daemon.sock, and every other command run in the repository is sent
+ * to it and run there, so that the commit cache, the blob cache, the pack
+ * index, the commit graph and the commit id index stay in memory from one
+ * command to the next instead of being read again by a new process.
+ * A command is run in its own process, as before, when no daemon is running.
+ * Either way, a command holds the lock on .gitlet/lock while it runs, so that
+ * commands never run at the same time in one repository; push and fetch
+ * hold the lock of the remote as well.
+ * The client sends the number of arguments and the arguments; the daemon
+ * answers with the exit status and everything the command printed.
+ *  @Author Zhang, Xiaochen
+ */
+public class Daemon {
+    /** The name of the socket in a .gitlet directory. */
+    static final String SOCKET_NAME = "daemon.sock";
+    /** The name of the lock file in a .gitlet directory. */
+    static final String LOCK_NAME = "lock";
+    /** True in the process of a running daemon. */
+    private static boolean serving;
+
+    /** Get the socket address of the daemon of the current repository. */
+    private static UnixDomainSocketAddress address() {
+        return UnixDomainSocketAddress.of(Utils.join(Repository.GITLET_DIR, SOCKET_NAME).toPath());
+    }
+
+    /** Connect to the daemon of the current repository, or return null if none is running. */
+    private static SocketChannel connect() {
+        if (!Utils.join(Repository.GITLET_DIR, SOCKET_NAME).exists()) {
+            return null;
+        }
+        try {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(address());
+                return channel;
+            } catch (IOException excp) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Send a command to the daemon of the current repository, if one is
+     * running, and print what it printed.  init and daemon are never sent.
+     * @param args the arguments of the command.
+     * @return the exit status of the command, or -1 if no daemon ran it.
+     */
+    static int forward(String[] args) {
+        if (args.length == 0 || args[0].equals("init") || args[0].equals("daemon")) {
+            return -1;
+        }
+        SocketChannel channel = connect();
+        if (channel == null) {
+            return -1;
+        }
+        try (SocketChannel open = channel) {
+            return printAnswer(request(open, args));
+        } catch (IOException excp) {
+            Utils.message("Lost the connection to the daemon: %s", excp.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Send ARGS over CHANNEL.
+     * @return the stream of the answer.
+     */
+    private static DataInputStream request(SocketChannel channel, String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+        out.writeInt(args.length);
+        for (String arg : args) {
+            Codec.writeString(out, arg);
+        }
+        out.flush();
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    }
+
+    /**
+     * Print what the daemon printed from its answer IN.
+     * @return the exit status of the command.
+     */
+    private static int printAnswer(DataInputStream in) throws IOException {
+        int status = in.readInt();
+        byte[] output = new byte[in.readInt()];
+        in.readFully(output);
+        System.out.write(output);
+        System.out.flush();
+        return status;
+    }
+
+    /**
+     * Run a command while holding the lock of the current repository, as
+     * one transaction of its journal, see Journal.  Commands run outside of
+     * a repository, such as init, take no lock.
+     * @param command the command.
+     */
+    static void runLocked(Runnable command) {
+        if (!Repository.GITLET_DIR.isDirectory()) {
+            command.run();
+            return;
+        }
+        withLock(Repository.GITLET_DIR, () -> Journal.run(Repository.GITLET_DIR, command));
+    }
+
+    /**
+     * Run an action on another repository, such as a remote, while holding
+     * its lock, after repairing it if a command crashed there, see Journal.
+     * What the action writes there is written directly.
+     * @param gitletDir the .gitlet directory of the repository.
+     * @param action the action.
+     */
+    static void runLocked(File gitletDir, Runnable action) {
+        withLock(gitletDir, () -> {
+            if (Journal.repair(gitletDir)) {
+                /* The repair rewrote files that may be in memory. */
+                Pack.refresh();
+                CommitGraph.refresh();
+                CommitIndex.refresh();
+            }
+            action.run();
+        });
+    }
+
+    /** Run ACTION while holding the lock on the lock file of GITLETDIR. */
+    private static void withLock(File gitletDir, Runnable action) {
+        File lockFile = Utils.join(gitletDir, LOCK_NAME);
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                action.run();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Serve the commands of the current repository until stopped.
+     */
+    static void serve() {
+        SocketChannel running = connect();
+        if (running != null) {
+            try {
+                running.close();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            Utils.message("A daemon is already running.");
+            Main.exit(0);
+        }
+        File socket = Utils.join(Repository.GITLET_DIR, SOCKET_NAME);
+        /* Left behind by a daemon that was killed. */
+        socket.delete();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address());
+            serving = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(socket::delete));
+            boolean stop = false;
+            while (!stop) {
+                try (SocketChannel channel = server.accept()) {
+                    stop = handle(channel);
+                } catch (IOException excp) {
+                    /* The client went away; wait for the next one. */
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /**
+     * Read one command from CHANNEL, run it and send back its output.
+     * @return true if the command was to stop the daemon.
+     */
+    private static boolean handle(SocketChannel channel) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Codec.readString(in);
+        }
+        boolean stop = args.length == 2 && args[0].equals("daemon") && args[1].equals("stop");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int status = stop ? 0 : run(args, output);
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+        out.writeInt(status);
+        out.writeInt(output.size());
+        output.writeTo(out);
+        out.flush();
+        return stop;
+    }
+
+    /**
+     * Run a command in this process, printing to OUTPUT instead of the
+     * standard output and the standard error.
+     * @return the exit status of the command.
+     */
+    private static int run(String[] args, ByteArrayOutputStream output) {
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        PrintStream captured = new PrintStream(output, true);
+        System.setOut(captured);
+        System.setErr(captured);
+        int status = 0;
+        try {
+            /* Files another process changed, such as a remote, are read again. */
+            Pack.refresh();
+            CommitGraph.refresh();
+            CommitIndex.refresh();
+            runLocked(() -> Main.run(args));
+        } catch (Main.Exit exit) {
+            status = exit.getStatus();
+        } catch (RuntimeException excp) {
+            /* What a process that failed would print. */
+            captured.print("Exception in thread \"main\" ");
+            excp.printStackTrace(captured);
+            status = 1;
+            /* The failed command may have left half-updated state in memory. */
+            Pack.forget();
+            CommitGraph.forget();
+            CommitIndex.forget();
+        } finally {
+            /* What the command wrote is in place now, and is no change by another process. */
+            Pack.restamp();
+            CommitGraph.restamp();
+            CommitIndex.restamp();
+            captured.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        return status;
+    }
+
+    /**
+     * Stop the daemon of the current repository.
+     */
+    static void stop() {
+        SocketChannel channel = connect();
+        if (channel == null) {
+            Utils.message("No daemon is running.");
+            Main.exit(0);
+        }
+        try (SocketChannel open = channel) {
+            request(open, new String[] {"daemon", "stop"}).readInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Print the hits, misses and size of each cache of the daemon of the
+     * current repository.
+     */
+    static void status() {
+        if (serving) {
+            Utils.message("commits: %s", Commit.CACHE);
+            Utils.message("trees: %s", Tree.CACHE);
+            Utils.message("blobs: %s", Blobs.CACHE);
+            Utils.message("delta bases: %s", Pack.BASES);
+            return;
+        }
+        SocketChannel channel = connect();
+        if (channel == null) {
+            Utils.message("No daemon is running.");
+            Main.exit(0);
+        }
+        try (SocketChannel open = channel) {
+            printAnswer(request(open, new String[] {"daemon", "status"}));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
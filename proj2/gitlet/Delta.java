@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Binary deltas between two versions of a file.  A delta is the length of
+ * the target, then a list of instructions, each either to copy a range of
+ * the base or to insert bytes given in the delta.  Copies are found by
+ * hashing the blocks of BLOCK_SIZE bytes of the base and looking up the
+ * rolling hash of every BLOCK_SIZE bytes of the target, as rsync does; a
+ * match is then grown to either side as far as the bytes agree.
+ * Numbers are written as variable-length integers of 7 bits per byte.
+ *  @Author Zhang, Xiaochen
+ */
+class Delta {
+    /** The length of the blocks of the base that are hashed. */
+    private static final int BLOCK_SIZE = 16;
+    /** The multiplier of the rolling hash. */
+    private static final int PRIME = 16777619;
+    /** PRIME to the power BLOCK_SIZE - 1, which rolls the oldest byte out. */
+    private static final int PRIME_POWER;
+
+    static {
+        int power = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            power *= PRIME;
+        }
+        PRIME_POWER = power;
+    }
+
+    /**
+     * Make the delta that turns BASE into TARGET.
+     * @return the delta, which apply turns back into TARGET.
+     */
+    static byte[] encode(byte[] base, byte[] target) {
+        /* The offset of a block of the base with each hash, plus one, or 0. */
+        int[] table = new int[Integer.highestOneBit(Math.max(base.length / BLOCK_SIZE, 1) * 2) * 2];
+        int mask = table.length - 1;
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            table[hash(base, offset) & mask] = offset + 1;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeNumber(out, target.length);
+        int inserted = 0;
+        int i = 0;
+        int hash = target.length >= BLOCK_SIZE ? hash(target, 0) : 0;
+        while (i + BLOCK_SIZE <= target.length) {
+            int candidate = table[hash & mask] - 1;
+            if (candidate >= 0 && Arrays.equals(base, candidate, candidate + BLOCK_SIZE,
+                    target, i, i + BLOCK_SIZE)) {
+                int start = i;
+                int baseStart = candidate;
+                while (start > inserted && baseStart > 0 && target[start - 1] == base[baseStart - 1]) {
+                    start -= 1;
+                    baseStart -= 1;
+                }
+                int end = i + BLOCK_SIZE;
+                int baseEnd = candidate + BLOCK_SIZE;
+                while (end < target.length && baseEnd < base.length && target[end] == base[baseEnd]) {
+                    end += 1;
+                    baseEnd += 1;
+                }
+                writeInsert(out, target, inserted, start);
+                writeNumber(out, ((long) (end - start) << 1) | 1);
+                writeNumber(out, baseStart);
+                inserted = end;
+                i = end;
+                if (i + BLOCK_SIZE <= target.length) {
+                    hash = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK_SIZE < target.length) {
+                    hash = (hash - target[i] * PRIME_POWER) * PRIME + target[i + BLOCK_SIZE];
+                }
+                i += 1;
+            }
+        }
+        writeInsert(out, target, inserted, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Rebuild the target of a delta.
+     * @param base the base the delta was made against.
+     * @param delta the delta.
+     * @return the target.
+     */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] position = {0};
+        byte[] target = new byte[(int) readNumber(delta, position)];
+        int length = 0;
+        while (position[0] < delta.length) {
+            long instruction = readNumber(delta, position);
+            int size = (int) (instruction >>> 1);
+            if ((instruction & 1) != 0) {
+                int offset = (int) readNumber(delta, position);
+                System.arraycopy(base, offset, target, length, size);
+            } else {
+                System.arraycopy(delta, position[0], target, length, size);
+                position[0] += size;
+            }
+            length += size;
+        }
+        if (length != target.length) {
+            throw Utils.error("Corrupted delta.");
+        }
+        return target;
+    }
+
+    /** Returns the hash of the BLOCK_SIZE bytes of DATA at OFFSET. */
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = hash * PRIME + data[i];
+        }
+        return hash;
+    }
+
+    /** Write the instruction to insert the bytes of TARGET from START to END, if any. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int start, int end) {
+        if (end > start) {
+            writeNumber(out, (long) (end - start) << 1);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Write the non-negative number N in 7 bits per byte, the lowest first. */
+    private static void writeNumber(ByteArrayOutputStream out, long n) {
+        while (n >= 0x80) {
+            out.write((int) (n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /** Read a number written by writeNumber from DATA at POSITION[0], advancing it. */
+    private static long readNumber(byte[] data, int[] position) {
+        long n = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            n |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return n;
+    }
+}
@@ -0,0 +1,45 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import static gitlet.TestUtils.*;
+
+/** Compares the sizes of packs of many slightly edited versions of a file
+ *  with and without deltas, and times checking all the versions out of
+ *  each.  Run it as
+ *      java gitlet.DeltaBenchmark [VERSIONS]
+ *  @author Zhang, Xiaochen
+ */
+public class DeltaBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int versions = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        long whole = repack(versions, 0);
+        long deltas = repack(versions, Pack.DEFAULT_DELTA_DEPTH);
+        System.out.printf("%d versions of a %d KiB file: pack %d bytes without deltas,"
+                + " %d bytes with deltas (%.1f%%)%n", versions, DeltaTest.FILE_SIZE / 1024,
+                whole, deltas, 100.0 * deltas / whole);
+    }
+
+    /** Commit VERSIONS versions of a file, repack them with chains of deltas
+     *  at most MAXDEPTH long, time checking them all out, and return the size
+     *  of the pack. */
+    private static long repack(int versions, int maxDepth) throws IOException, InterruptedException {
+        File dir = tempDir("gitlet-delta");
+        try {
+            DeltaTest.commitVersions(dir, versions);
+            gitlet(dir, "repack", "--depth", Integer.toString(maxDepth));
+            String[] log = gitlet(dir, "log").split("\n");
+            long start = System.nanoTime();
+            for (int i = 0; i < versions; i++) {
+                gitlet(dir, "checkout", DeltaTest.versionId(log, versions, i), "--", "file.txt");
+            }
+            System.out.printf("depth %2d: checked out %d versions in %.0f ms%n", maxDepth,
+                    versions, (System.nanoTime() - start) / 1e6);
+            return new File(dir, ".gitlet/objects/pack/pack.pack").length();
+        } finally {
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.TestUtils.*;
+
+/** Tests the deltas of repack: commits many slightly edited versions of a
+ *  file, packs them with and without deltas, checks that the pack with
+ *  deltas is much smaller and that every version is checked out intact from
+ *  both.  Run it as
+ *      java gitlet.DeltaTest [VERSIONS]
+ *  @author Zhang, Xiaochen
+ */
+public class DeltaTest {
+    /** The size of the file under test, which is small enough not to be chunked. */
+    static final int FILE_SIZE = 512 * 1024;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int versions = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        long whole = repack(versions, 0);
+        long deltas = repack(versions, Pack.DEFAULT_DELTA_DEPTH);
+        check("deltas", "pack size", deltas * 4 < whole);
+        finish("deltas");
+    }
+
+    /** Commit VERSIONS versions of a file, repack them with chains of deltas
+     *  at most MAXDEPTH long, check them out again, and return the size of the pack. */
+    private static long repack(int versions, int maxDepth) throws IOException, InterruptedException {
+        File dir = tempDir("gitlet-delta");
+        try {
+            List<byte[]> contents = commitVersions(dir, versions);
+            gitlet(dir, "repack", "--depth", Integer.toString(maxDepth));
+            String[] log = gitlet(dir, "log").split("\n");
+            File file = new File(dir, "file.txt");
+            for (int i = 0; i < versions; i++) {
+                gitlet(dir, "checkout", versionId(log, versions, i), "--", "file.txt");
+                check("deltas", "version " + i + " at depth " + maxDepth,
+                        Arrays.equals(Files.readAllBytes(file.toPath()), contents.get(i)));
+            }
+            return new File(dir, ".gitlet/objects/pack/pack.pack").length();
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Make a repository in DIR, commit VERSIONS versions of file.txt, each
+     *  with one line edited, and return the versions. */
+    static List<byte[]> commitVersions(File dir, int versions) throws IOException, InterruptedException {
+        gitlet(dir, "init");
+        File file = new File(dir, "file.txt");
+        List<byte[]> contents = new ArrayList<>();
+        Random random = new Random(18);
+        byte[] content = makeText(FILE_SIZE, random);
+        for (int i = 0; i < versions; i++) {
+            content = editLine(content, random);
+            contents.add(content);
+            Files.write(file.toPath(), content);
+            gitlet(dir, "add", "file.txt");
+            gitlet(dir, "commit", "version " + i);
+        }
+        return contents;
+    }
+
+    /** Returns the id of the commit of version I of VERSIONS in the lines of LOG. */
+    static String versionId(String[] log, int versions, int i) {
+        return log[1 + 5 * (versions - 1 - i)].substring("commit ".length());
+    }
+}
@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Line diffs between versions of a file, as Myers' O(ND) algorithm finds
+ * them in linear space: the shortest edit script is split at the middle of
+ * its path, found by searching from both ends at once, and each half is
+ * then diffed on its own.  Lines common to both ends are trimmed first, and
+ * lines found in one file only are left out of the search, so two large
+ * files with few edits cost little more than reading them.
+ * A file is split into lines that keep their "\n", and its lines are
+ * compared as numbers, equal lines in any of the files compared having the
+ * same number; bytes are never decoded, so any encoding is kept as it is.
+ *  @Author Zhang, Xiaochen
+ */
+class Diff {
+    /** The number of bytes at the head of a file searched for a NUL byte. */
+    private static final int BINARY_CHECK_BYTES = 8000;
+
+    /**
+     * Check if a file looks binary, as one with a NUL byte near its head does.
+     * @param content the content of the file.
+     */
+    static boolean isBinary(byte[] content) {
+        for (int i = 0; i < Math.min(content.length, BINARY_CHECK_BYTES); i++) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find where the lines of a file start.
+     * @param content the content of the file.
+     * @return the offset of every line, then the length of the content.
+     */
+    static int[] lineStarts(byte[] content) {
+        int count = 0;
+        for (byte b : content) {
+            if (b == '\n') {
+                count += 1;
+            }
+        }
+        boolean unterminated = content.length > 0 && content[content.length - 1] != '\n';
+        int[] starts = new int[count + (unterminated ? 1 : 0) + 1];
+        int line = 1;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] == '\n' && line < starts.length) {
+                starts[line++] = i + 1;
+            }
+        }
+        starts[starts.length - 1] = content.length;
+        return starts;
+    }
+
+    /**
+     * Number the lines of some files, giving equal lines the same number.
+     * @param contents the contents of the files.
+     * @param starts the line starts of each file, see lineStarts.
+     * @return the numbers of the lines of each file.
+     */
+    static int[][] number(byte[][] contents, int[][] starts) {
+        int total = 0;
+        for (int[] fileStarts : starts) {
+            total += fileStarts.length - 1;
+        }
+        /* An open-addressing table of the numbers plus one, by the hash of their lines. */
+        int[] table = new int[Integer.highestOneBit(Math.max(total, 1) * 2) * 2];
+        int mask = table.length - 1;
+        /* The file and the line first seen with each number, to compare lines with. */
+        int[] firstFile = new int[total];
+        int[] firstLine = new int[total];
+        int numbers = 0;
+        int[][] lines = new int[contents.length][];
+        for (int f = 0; f < contents.length; f++) {
+            byte[] content = contents[f];
+            lines[f] = new int[starts[f].length - 1];
+            for (int i = 0; i < lines[f].length; i++) {
+                int start = starts[f][i];
+                int end = starts[f][i + 1];
+                int hash = 1;
+                for (int at = start; at < end; at++) {
+                    hash = 31 * hash + content[at];
+                }
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (true) {
+                    int number = table[slot] - 1;
+                    if (number < 0) {
+                        table[slot] = numbers + 1;
+                        firstFile[numbers] = f;
+                        firstLine[numbers] = i;
+                        lines[f][i] = numbers++;
+                        break;
+                    }
+                    int[] other = starts[firstFile[number]];
+                    if (Arrays.equals(content, start, end, contents[firstFile[number]],
+                            other[firstLine[number]], other[firstLine[number] + 1])) {
+                        lines[f][i] = number;
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Match the lines of two files along a shortest edit script.
+     * @param a the numbers of the lines of the old file.
+     * @param b the numbers of the lines of the new file.
+     * @return for every line of A, the line of B it is kept as, or -1 if
+     *         it is deleted; the matched lines of B increase along A.
+     */
+    static int[] match(int[] a, int[] b) {
+        int[] match = new int[a.length];
+        Arrays.fill(match, -1);
+        /* Lines found in only one of the files are never matched, so they are
+         * left out of the search, which often leaves little but common lines. */
+        BitSet inA = new BitSet();
+        BitSet inB = new BitSet();
+        for (int line : a) {
+            inA.set(line);
+        }
+        for (int line : b) {
+            inB.set(line);
+        }
+        int[] aKept = kept(a, inB);
+        int[] bKept = kept(b, inA);
+        int[] aLines = new int[aKept.length];
+        int[] bLines = new int[bKept.length];
+        for (int i = 0; i < aKept.length; i++) {
+            aLines[i] = a[aKept[i]];
+        }
+        for (int i = 0; i < bKept.length; i++) {
+            bLines[i] = b[bKept[i]];
+        }
+        int[] keptMatch = new int[aLines.length];
+        Arrays.fill(keptMatch, -1);
+        compare(aLines, 0, aLines.length, bLines, 0, bLines.length, keptMatch);
+        for (int i = 0; i < keptMatch.length; i++) {
+            if (keptMatch[i] >= 0) {
+                match[aKept[i]] = bKept[keptMatch[i]];
+            }
+        }
+        return match;
+    }
+
+    /** Get the indexes of the lines of FILE whose numbers are in OTHER. */
+    private static int[] kept(int[] file, BitSet other) {
+        int[] indexes = new int[file.length];
+        int count = 0;
+        for (int i = 0; i < file.length; i++) {
+            if (other.get(file[i])) {
+                indexes[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+
+    /** Match the lines of A from ALO to AHI with those of B from BLO to BHI into MATCH. */
+    private static void compare(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, int[] match) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            match[aLo++] = bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            match[--aHi] = --bHi;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            return;
+        }
+        int[] split = middle(a, aLo, aHi, b, bLo, bHi);
+        if (split != null) {
+            compare(a, aLo, split[0], b, bLo, split[1], match);
+            compare(a, split[0], aHi, b, split[1], bHi, match);
+        }
+    }
+
+    /**
+     * Find a point in the middle of a shortest edit script of two ranges,
+     * which differ in their first and their last lines, by following the
+     * furthest paths of each number of edits from the start and from the end
+     * until they overlap.
+     * @return the lines of A and B where the script is split, or null if
+     *         the ranges have no line in common.
+     */
+    private static int[] middle(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        /* The furthest x reached on each diagonal k = x - y, from the start and from the end. */
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        /* With an odd delta, the paths meet while the forward one is extended. */
+        boolean front = (delta & 1) != 0;
+        int kStart1 = 0;
+        int kEnd1 = 0;
+        int kStart2 = 0;
+        int kEnd2 = 0;
+        for (int d = 0; d < maxD; d++) {
+            for (int k1 = -d + kStart1; k1 <= d - kEnd1; k1 += 2) {
+                int k1Offset = offset + k1;
+                int x1 = k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])
+                    ? forward[k1Offset + 1] : forward[k1Offset - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[k1Offset] = x1;
+                if (x1 > n) {
+                    kEnd1 += 2;
+                } else if (y1 > m) {
+                    kStart1 += 2;
+                } else if (front) {
+                    int k2Offset = offset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1
+                            && x1 >= n - backward[k2Offset]) {
+                        return new int[]{aLo + x1, bLo + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + kStart2; k2 <= d - kEnd2; k2 += 2) {
+                int k2Offset = offset + k2;
+                int x2 = k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])
+                    ? backward[k2Offset + 1] : backward[k2Offset - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[k2Offset] = x2;
+                if (x2 > n) {
+                    kEnd2 += 2;
+                } else if (y2 > m) {
+                    kStart2 += 2;
+                } else if (!front) {
+                    int k1Offset = offset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1) {
+                        int x1 = forward[k1Offset];
+                        int y1 = offset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            return new int[]{aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
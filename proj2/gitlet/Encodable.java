@@ -0,0 +1,17 @@
+package gitlet;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+/** An interface describing objects with a compact binary form, which
+ *  Utils.writeObject uses instead of Java serialization.  See Codec.
+ *  @author Zhang, Xiaochen
+ */
+interface Encodable extends Serializable {
+    /** The tag that tells Codec which class to decode. */
+    byte codecTag();
+
+    /** Write the fields of this object to OUT. */
+    void encode(DataOutputStream out) throws IOException;
+}
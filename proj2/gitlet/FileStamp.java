@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The identity, size and modification time of a file when it was last read,
+ * which tells a process that keeps the file's content in memory, such as the
+ * daemon, whether another process has since appended to it or replaced it.
+ *  @Author Zhang, Xiaochen
+ */
+class FileStamp {
+    /** The file key of the file, such as its device and inode, or null. */
+    private final Object key;
+    /** The size of the file, or -1 if it does not exist. */
+    private final long size;
+    /** The modification time of the file, in nanoseconds. */
+    private final long modified;
+
+    private FileStamp(Object key, long size, long modified) {
+        this.key = key;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    /**
+     * Get the stamp of a file as it is now.
+     * @param file the file, which need not exist.
+     */
+    static FileStamp of(File file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return new FileStamp(attributes.fileKey(), attributes.size(),
+                    attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        } catch (IOException excp) {
+            return new FileStamp(null, -1, 0);
+        }
+    }
+
+    /** Check if the file is no longer as it was when this stamp was taken. */
+    boolean isStale(File file) {
+        return !equals(of(file));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FileStamp)) {
+            return false;
+        }
+        FileStamp other = (FileStamp) o;
+        return size == other.size && modified == other.modified && Objects.equals(key, other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, size, modified);
+    }
+}
@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * The mark and sweep of gc.  Every object of the repository has one bit in
+ * a bitmap: the objects of the pack by their position in its index, then the
+ * loose objects in sorted order.  The commits reachable from the roots are
+ * found first with a second bitmap over the positions of the commit graph;
+ * their trees, blobs, chunks and delta bases are then marked, and a tree
+ * already marked is not read again, since everything under it is marked too.
+ * The memory taken is thus two bits per object and commit, besides the
+ * bounded caches of commits and trees, whatever the size of the history.
+ * What is not marked is swept: the loose objects are deleted, and the pack
+ * is rewritten with the objects that are left once the command is committed.
+ *  @Author Zhang, Xiaochen
+ */
+class GarbageCollector {
+    /** The .gitlet directory. */
+    private final File gitletDir;
+    /** The objects directory. */
+    private final File objectsDir;
+    /** The pack, whose objects come first in the bitmap. */
+    private final Pack pack;
+    /** The ids of the loose objects, sorted, which come after those of the pack. */
+    private final List<String> loose = new ArrayList<>();
+    /** The marked objects. */
+    private final BitSet marked = new BitSet();
+
+    /**
+     * Make a collector of the given repository.
+     * @param gitletDir the .gitlet directory.
+     */
+    GarbageCollector(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.objectsDir = Utils.join(gitletDir, "objects");
+        this.pack = Pack.of(objectsDir);
+        for (String name : Utils.plainFilenamesIn(objectsDir)) {
+            if (Pack.isObjectId(name)) {
+                loose.add(name);
+            }
+        }
+        Collections.sort(loose);
+    }
+
+    /**
+     * Drop every commit that no root reaches, and every object that no
+     * commit left and no root names.  The commit metadata is rewritten as
+     * part of the running command, and the objects go once it is committed.
+     * @param rootCommits the ids of the commits the branches point to.
+     * @param rootBlobs the ids of other blobs to keep, such as the staged ones.
+     */
+    void collect(Collection<String> rootCommits, Collection<String> rootBlobs) {
+        CommitGraph graph = CommitGraph.load(gitletDir);
+        List<Integer> roots = new ArrayList<>();
+        for (String commitId : rootCommits) {
+            if (!graph.contains(commitId)) {
+                graph.add(Commit.load(objectsDir, commitId));
+            }
+            roots.add(graph.position(commitId));
+        }
+        BitSet reachable = graph.reachable(roots, null);
+        for (int i = reachable.nextSetBit(0); i >= 0; i = reachable.nextSetBit(i + 1)) {
+            markCommit(graph.id(i));
+        }
+        for (String blobId : rootBlobs) {
+            markBlob(blobId);
+        }
+
+        /* Sweep the loose objects as part of the command. */
+        int removed = 0;
+        long reclaimed = 0;
+        for (int i = 0; i < loose.size(); i++) {
+            if (!marked.get(pack.size() + i)) {
+                File file = Utils.join(objectsDir, loose.get(i));
+                removed += 1;
+                reclaimed += file.length();
+                if (!Journal.delete(file)) {
+                    file.delete();
+                }
+            }
+        }
+        if (reachable.cardinality() < graph.size()) {
+            graph.retain(reachable);
+            CommitIndex.load(gitletDir).retain(graph::contains);
+            CommitLog.load(gitletDir).retain(graph::contains);
+        }
+        graph.writeBitmaps(rootCommits);
+
+        /* Rewrite the pack once nothing names what it drops. */
+        BitSet keep = marked.get(0, pack.size());
+        int removedTotal = removed + pack.size() - keep.cardinality();
+        long looseReclaimed = reclaimed;
+        Journal.afterCommit(() -> {
+            long packReclaimed = pack.retain(keep);
+            Utils.message("Removed %d unreachable objects, reclaiming %d bytes.",
+                removedTotal, looseReclaimed + packReclaimed);
+        });
+    }
+
+    /**
+     * Mark an object, wherever it is.
+     * @param id the id of the object.
+     * @return true if it was not marked yet and is in the repository.
+     */
+    private boolean mark(String id) {
+        boolean found = false;
+        int position = pack.position(id);
+        if (position >= 0) {
+            found = !marked.get(position);
+            marked.set(position);
+        }
+        int index = Collections.binarySearch(loose, id);
+        if (index >= 0) {
+            found |= !marked.get(pack.size() + index);
+            marked.set(pack.size() + index);
+        }
+        return found;
+    }
+
+    /** Mark the commit with the given id, its tree and its blobs. */
+    private void markCommit(String commitId) {
+        if (!mark(commitId)) {
+            return;
+        }
+        Commit commit = Commit.load(objectsDir, commitId);
+        if (commit.getTreeId() != null) {
+            markTree(commit.getTreeId());
+            return;
+        }
+        for (String blobId : commit.getBlobs().values()) {
+            markBlob(blobId);
+        }
+    }
+
+    /** Mark the tree with the given id and everything under it, unless it is marked already. */
+    private void markTree(String treeId) {
+        if (!mark(treeId)) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : Tree.load(objectsDir, treeId).getEntries().entrySet()) {
+            if (entry.getKey().endsWith(Tree.DIR_SUFFIX)) {
+                markTree(entry.getValue());
+            } else {
+                markBlob(entry.getValue());
+            }
+        }
+    }
+
+    /** Mark the blob with the given id, with its chunks or the chain of its delta bases. */
+    private void markBlob(String blobId) {
+        if (!mark(blobId)) {
+            return;
+        }
+        int position = pack.position(blobId);
+        String base = position >= 0 ? pack.deltaBaseAt(position) : null;
+        if (base != null) {
+            markBlob(base);
+            return;
+        }
+        for (String chunkId : Blobs.chunkIds(objectsDir, blobId)) {
+            markBlob(chunkId);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.TestUtils.*;
+
+/** Tests gc: commits versions of a file on master, and more versions and a
+ *  large chunked file on a branch, packs them with deltas, removes the
+ *  branch and collects.  Checks that the pack shrinks by what gc reports,
+ *  that every version on master is still checked out intact, that the
+ *  commits of the branch are gone from global-log, and that a second gc
+ *  finds nothing to remove.  Run it as
+ *      java gitlet.GcTest [VERSIONS]
+ *  @author Zhang, Xiaochen
+ */
+public class GcTest {
+    /** The size of the file edited in every commit. */
+    private static final int FILE_SIZE = 256 * 1024;
+    /** The size of the file on the branch, which is chunked. */
+    private static final int LARGE_SIZE = 4 * 1024 * 1024;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int versions = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        File dir = tempDir("gitlet-gc");
+        try {
+            gitlet(dir, "init");
+            File file = new File(dir, "file.txt");
+            Random random = new Random(19);
+            byte[] content = makeText(FILE_SIZE, random);
+            List<byte[]> contents = new ArrayList<>();
+            for (int i = 0; i < versions; i++) {
+                content = editLine(content, random);
+                contents.add(content);
+                Files.write(file.toPath(), content);
+                gitlet(dir, "add", "file.txt");
+                gitlet(dir, "commit", "version " + i);
+            }
+            gitlet(dir, "branch", "side");
+            gitlet(dir, "checkout", "side");
+            Files.write(new File(dir, "large.txt").toPath(), makeText(LARGE_SIZE, random));
+            gitlet(dir, "add", "large.txt");
+            for (int i = 0; i < versions; i++) {
+                content = editLine(content, random);
+                Files.write(file.toPath(), content);
+                gitlet(dir, "add", "file.txt");
+                gitlet(dir, "commit", "side " + i);
+            }
+            gitlet(dir, "checkout", "master");
+            gitlet(dir, "repack");
+            gitlet(dir, "rm-branch", "side");
+
+            File packFile = new File(dir, ".gitlet/objects/pack/pack.pack");
+            long before = packFile.length();
+            String output = gitlet(dir, "gc").trim();
+            long after = packFile.length();
+            check("gc", "report", output.matches("Removed \\d+ unreachable objects, reclaiming "
+                    + (before - after) + " bytes\\."));
+            check("gc", "pack size", after * 2 < before);
+
+            String[] log = gitlet(dir, "log").split("\n");
+            for (int i = 0; i < versions; i++) {
+                String id = log[1 + 5 * (versions - 1 - i)].substring("commit ".length());
+                gitlet(dir, "checkout", id, "--", "file.txt");
+                check("gc", "version " + i,
+                        Arrays.equals(Files.readAllBytes(file.toPath()), contents.get(i)));
+            }
+            check("gc", "global-log", !gitlet(dir, "global-log").contains("side 0"));
+            check("gc", "find", gitlet(dir, "find", "side 0").trim()
+                    .equals("Found no commit with that message."));
+            check("gc", "second gc", gitlet(dir, "gc").trim()
+                    .equals("Removed 0 unreachable objects, reclaiming 0 bytes."));
+        } finally {
+            delete(dir);
+        }
+        finish("gc");
+    }
+}
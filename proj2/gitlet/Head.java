@@ -2,7 +2,10 @@ package gitlet;
 
 import java.io.*;
 
-public class Head implements Serializable {
+public class Head implements Encodable {
+    /** The serialVersionUID of the heads that older versions of gitlet
+     *  Java-serialized, so that they are still read. */
+    private static final long serialVersionUID = 924812612021716837L;
     private final String branchName;
 
     public Head(String branchName) {
@@ -12,4 +15,19 @@ public class Head implements Serializable {
     public String getBranchName() {
         return branchName;
     }
+
+    @Override
+    public byte codecTag() {
+        return Codec.HEAD;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Codec.writeString(out, branchName);
+    }
+
+    /** Read a head written by encode. */
+    static Head decode(DataInputStream in) throws IOException {
+        return new Head(Codec.readString(in));
+    }
 }
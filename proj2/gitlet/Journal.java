@@ -0,0 +1,759 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The write-ahead journal of a repository, kept in the file .gitlet/journal,
+ * which makes every command that changes the repository all-or-nothing.
+ * While a command runs, the refs, HEAD, the index, the remotes and the
+ * commit log, graph and id index it writes are only kept in memory, and read
+ * back from there by the command itself.  The new loose objects are written
+ * at once, since no ref points to them yet.  When the command ends, the new
+ * objects and the rest are appended to the journal as one frame, whose
+ * objects are the pack of the command, and synced with a single fsync; only
+ * then are the files written in place.  The loose objects themselves are
+ * synced when the journal is next emptied.
+ * A crash before the sync leaves the repository as it was, and a crash after
+ * it is repaired by the next command, which writes the frames again.
+ * <p>
+ * The file is the magic number, the version, the boot the frames were
+ * written in and the end of the frames already written in place, followed by
+ * the frames.  A frame is its length, its CRC-32 and its records; a record
+ * writes bytes at an offset of a file and cuts the file there, deletes a
+ * file, or holds the bytes of a loose object, which are written to a
+ * temporary file and renamed into place when the frame is written again.
+ * Frames of older versions may also name a loose object that was synced
+ * before them, with its length.  Since the operating system keeps what was
+ * written until the machine stops, only the frames after that end are
+ * written again after a crash of the process, but all of them after a
+ * reboot.  Once the journal is large, the files it names are synced and the
+ * journal is emptied.
+ *  @Author Zhang, Xiaochen
+ */
+class Journal {
+    /** The name of the journal file in a .gitlet directory. */
+    static final String FILE_NAME = "journal";
+    /** The magic number at the head of the file, "GJNL". */
+    private static final int MAGIC = 0x474a4e4c;
+    /** The version of the file format. */
+    private static final int VERSION = 1;
+    /** The size of the header: magic, version, boot and the applied end. */
+    private static final int HEADER_SIZE = 24;
+    /** The size of the head of a frame: its length and its CRC-32. */
+    private static final int FRAME_HEADER_SIZE = 16;
+    /** The size of the journal above which it is emptied. */
+    private static final long CHECKPOINT_BYTES = 16 << 20;
+    /** The kinds of records. */
+    private static final byte WRITE = 1;
+    private static final byte DELETE = 2;
+    private static final byte OBJECT = 3;
+    private static final byte PACKED = 4;
+    /** The boot of an unknown system, which always counts as a new boot. */
+    private static final long UNKNOWN_BOOT = 0;
+    /**
+     * Told of each point of a commit at which a test of the recovery may
+     * stop the process dead: "frame" before the frame is complete, "apply"
+     * after the frame is synced and "half" after half of the files are
+     * written.  Set only by JournalTest.
+     */
+    static Consumer<String> crashPoints = point -> { };
+
+    /** The journal of the command running, or null. */
+    private static Journal current;
+
+    /** The writes of one file that are not in place yet. */
+    private static class Pending {
+        /** The offset of the bytes in the file; the file ends after them. */
+        private long offset;
+        /** The bytes. */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        /** True if the file is deleted instead. */
+        private boolean deleted;
+    }
+
+    /** The .gitlet directory of this journal. */
+    private final File gitletDir;
+    /** The objects directory. */
+    private final File objectsDir;
+    /** The journal file. */
+    private final File journalFile;
+    /** The pending writes, by file, in the order they were first made. */
+    private final Map<File, Pending> pending = new LinkedHashMap<>();
+    /** The loose objects written by the command. */
+    private final Set<File> objects = new LinkedHashSet<>();
+    /** What the command does once it is committed, in order. */
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    private Journal(File gitletDir) {
+        this.gitletDir = gitletDir.getAbsoluteFile();
+        this.objectsDir = Utils.join(this.gitletDir, "objects");
+        this.journalFile = Utils.join(this.gitletDir, FILE_NAME);
+    }
+
+    /**
+     * Run a command as one transaction of the given repository, after
+     * repairing the repository if a command crashed.  What the command
+     * wrote is committed when it returns or exits with Main.exit, and
+     * dropped if it fails.  Outside of a repository, as for init, the
+     * command writes its files directly.
+     * @param gitletDir the .gitlet directory, whose lock is held.
+     * @param command the command.
+     */
+    static void run(File gitletDir, Runnable command) {
+        if (!gitletDir.isDirectory()) {
+            command.run();
+            return;
+        }
+        Journal journal = new Journal(gitletDir);
+        journal.recover();
+        synchronized (Journal.class) {
+            current = journal;
+        }
+        boolean done = false;
+        try {
+            command.run();
+            done = true;
+        } catch (Main.Exit exit) {
+            done = true;
+            throw exit;
+        } finally {
+            synchronized (Journal.class) {
+                current = null;
+            }
+            if (done) {
+                journal.commit();
+                for (Runnable action : journal.afterCommit) {
+                    action.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Repair another repository, such as a remote, if a command crashed there.
+     * @param gitletDir the .gitlet directory, whose lock is held.
+     * @return true if frames were written in place again.
+     */
+    static boolean repair(File gitletDir) {
+        return new Journal(gitletDir).recover();
+    }
+
+    /**
+     * Do something once the running command is committed, such as dropping
+     * objects that the files it rewrote no longer name, so that a crash before
+     * then leaves those files as they were.  Outside of a command, the action
+     * is done at once.
+     * @param action what to do.
+     */
+    static void afterCommit(Runnable action) {
+        synchronized (Journal.class) {
+            if (current != null) {
+                current.afterCommit.add(action);
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /** Get the journal of the running command if it covers FILE, or null. */
+    private static Journal covering(File file) {
+        if (current == null) {
+            return null;
+        }
+        Path path = file.getAbsoluteFile().toPath();
+        return path.startsWith(current.gitletDir.toPath()) ? current : null;
+    }
+
+    /** Get the pending writes of FILE, making them if needed. */
+    private Pending pendingOf(File file) {
+        return pending.computeIfAbsent(file.getAbsoluteFile(), key -> new Pending());
+    }
+
+    /** Check if FILE is a loose object. */
+    private boolean isObject(File file) {
+        return objectsDir.equals(file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Replace the whole content of a file as part of the running command.
+     * A loose object is not journaled here but written by the caller, and
+     * its bytes are copied into the frame of the command when it ends.
+     * @param file the file.
+     * @param content the new content.
+     * @return true if the write is journaled; false if the caller must write the file.
+     */
+    static synchronized boolean write(File file, byte[] content) {
+        Journal journal = covering(file);
+        if (journal == null) {
+            return false;
+        }
+        if (journal.isObject(file)) {
+            journal.objects.add(file.getAbsoluteFile());
+            return false;
+        }
+        Pending write = journal.pendingOf(file);
+        write.offset = 0;
+        write.deleted = false;
+        write.bytes.reset();
+        write.bytes.writeBytes(content);
+        return true;
+    }
+
+    /**
+     * Check if the running command keeps the writes of a file in memory, so
+     * that the caller must hand them to write or append.  A loose object is
+     * written by the caller instead.
+     * @param file the file.
+     */
+    static synchronized boolean holds(File file) {
+        Journal journal = covering(file);
+        return journal != null && !journal.isObject(file);
+    }
+
+    /**
+     * Append bytes to a file as part of the running command.
+     * @param file the file, which is made if it does not exist.
+     * @param content the bytes to append.
+     * @return true if the append is journaled; false if the caller must append.
+     */
+    static synchronized boolean append(File file, byte[] content) {
+        Journal journal = covering(file);
+        if (journal == null) {
+            return false;
+        }
+        Pending write = journal.pending.get(file.getAbsoluteFile());
+        if (write == null) {
+            write = journal.pendingOf(file);
+            write.offset = file.length();
+        } else if (write.deleted) {
+            write.offset = 0;
+            write.deleted = false;
+        }
+        write.bytes.writeBytes(content);
+        return true;
+    }
+
+    /**
+     * Delete a file as part of the running command.
+     * @param file the file.
+     * @return true if the deletion is journaled; false if the caller must delete the file.
+     */
+    static synchronized boolean delete(File file) {
+        Journal journal = covering(file);
+        if (journal == null) {
+            return false;
+        }
+        Pending write = journal.pendingOf(file);
+        write.offset = 0;
+        write.deleted = true;
+        write.bytes.reset();
+        return true;
+    }
+
+    /**
+     * Remember a loose object written by the running command, such as a
+     * blob, so that its bytes are copied into the frame of the command when it ends.
+     * @param file the object file; a packed object is left out.
+     */
+    static synchronized void addObject(File file) {
+        Journal journal = covering(file);
+        if (journal != null && file.isFile()) {
+            journal.objects.add(file.getAbsoluteFile());
+        }
+    }
+
+    /**
+     * Get the content of a file as the running command left it.
+     * @param file the file.
+     * @return the content, or null if the command did not write the file.
+     * @throws IllegalArgumentException if the command deleted the file.
+     */
+    static synchronized byte[] read(File file) {
+        Journal journal = covering(file);
+        Pending write = journal == null ? null : journal.pending.get(file.getAbsoluteFile());
+        if (write == null) {
+            return null;
+        }
+        if (write.deleted) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        if (write.offset == 0) {
+            return write.bytes.toByteArray();
+        }
+        byte[] content = new byte[(int) write.offset + write.bytes.size()];
+        try (InputStream in = new FileInputStream(file)) {
+            new DataInputStream(in).readFully(content, 0, (int) write.offset);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        System.arraycopy(write.bytes.toByteArray(), 0, content, (int) write.offset, write.bytes.size());
+        return content;
+    }
+
+    /**
+     * Open a stream over a file as the running command left it, reading
+     * what was on disk before the command appended to it from the file.
+     * @param file the file.
+     * @return the stream, or null if the command did not write the file.
+     * @throws IllegalArgumentException if the command deleted the file.
+     */
+    static synchronized InputStream open(File file) {
+        Journal journal = covering(file);
+        Pending write = journal == null ? null : journal.pending.get(file.getAbsoluteFile());
+        if (write == null) {
+            return null;
+        }
+        if (write.deleted) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        InputStream appended = new ByteArrayInputStream(write.bytes.toByteArray());
+        if (write.offset == 0) {
+            return appended;
+        }
+        try {
+            return new SequenceInputStream(limited(new FileInputStream(file), write.offset), appended);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Check if a file exists as the running command left it.
+     * @param file the file.
+     */
+    static synchronized boolean exists(File file) {
+        Journal journal = covering(file);
+        Pending write = journal == null ? null : journal.pending.get(file.getAbsoluteFile());
+        return write == null ? file.isFile() : !write.deleted;
+    }
+
+    /**
+     * Get the names of the plain files of a directory as the running command
+     * left it, given the names of the files on disk.
+     * @param dir the directory.
+     * @param names the sorted names of its plain files on disk.
+     * @return the sorted names, with the files made and deleted by the command.
+     */
+    static synchronized List<String> list(File dir, List<String> names) {
+        Journal journal = covering(dir);
+        if (journal == null) {
+            return names;
+        }
+        File key = dir.getAbsoluteFile();
+        TreeSet<String> result = null;
+        for (Map.Entry<File, Pending> write : journal.pending.entrySet()) {
+            if (!key.equals(write.getKey().getParentFile())) {
+                continue;
+            }
+            if (result == null) {
+                result = new TreeSet<>(names);
+            }
+            if (write.getValue().deleted) {
+                result.remove(write.getKey().getName());
+            } else {
+                result.add(write.getKey().getName());
+            }
+        }
+        return result == null ? names : new ArrayList<>(result);
+    }
+
+    /**
+     * Commit the command: append its frame to the journal and sync it, then
+     * write the files in place.
+     */
+    private void commit() {
+        if (pending.isEmpty() && objects.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            boolean created = channel.size() < HEADER_SIZE;
+            if (channel.size() <= HEADER_SIZE) {
+                writeHeader(channel, bootId(), HEADER_SIZE);
+            }
+            writeFrame(channel);
+            channel.force(false);
+            if (created) {
+                /* The journal itself must survive a reboot. */
+                syncDirectory(gitletDir);
+            }
+            crash("apply");
+            int count = 0;
+            for (Map.Entry<File, Pending> write : pending.entrySet()) {
+                if (count++ == pending.size() / 2) {
+                    crash("half");
+                }
+                apply(write.getKey(), write.getValue());
+            }
+            ByteBuffer header = readHeader(channel);
+            writeHeader(channel, header.getLong(8), channel.size());
+            if (channel.size() > CHECKPOINT_BYTES) {
+                checkpoint(channel);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Append the frame of the command to CHANNEL, which is not synced yet. */
+    private void writeFrame(FileChannel channel) throws IOException {
+        long start = channel.size();
+        channel.position(start + FRAME_HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)), crc));
+        for (File object : objects) {
+            if (!object.isFile()) {
+                continue;
+            }
+            long size = object.length();
+            out.writeByte(PACKED);
+            Codec.writeString(out, relative(object));
+            out.writeLong(size);
+            try (InputStream in = new FileInputStream(object)) {
+                if (limited(in, size).transferTo(out) != size) {
+                    throw Utils.error("Object %s changed while it was committed.", object);
+                }
+            }
+        }
+        for (Map.Entry<File, Pending> write : pending.entrySet()) {
+            Pending value = write.getValue();
+            out.writeByte(value.deleted ? DELETE : WRITE);
+            Codec.writeString(out, relative(write.getKey()));
+            if (!value.deleted) {
+                out.writeLong(value.offset);
+                out.writeLong(value.bytes.size());
+                value.bytes.writeTo(out);
+            }
+        }
+        out.flush();
+        crash("frame");
+        ByteBuffer head = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        head.putLong(channel.position() - start - FRAME_HEADER_SIZE);
+        head.putLong(crc.getValue());
+        head.flip();
+        channel.write(head, start);
+    }
+
+    /** Get the path of FILE relative to the .gitlet directory. */
+    private String relative(File file) {
+        return gitletDir.toPath().relativize(file.getAbsoluteFile().toPath()).toString();
+    }
+
+    /** Write the pending writes of FILE in place, without syncing them. */
+    private static void apply(File file, Pending write) throws IOException {
+        if (write.deleted) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        try (FileChannel out = openForWrite(file)) {
+            out.write(ByteBuffer.wrap(write.bytes.toByteArray()), write.offset);
+            out.truncate(write.offset + write.bytes.size());
+        }
+    }
+
+    /** Open FILE for writing, making it and its directory if needed. */
+    private static FileChannel openForWrite(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    }
+
+    /**
+     * Repair the repository if a command crashed: write in place again the
+     * frames that may not be there, then drop a torn last frame.
+     * @return true if frames were written in place again.
+     */
+    private boolean recover() {
+        if (!journalFile.isFile() || journalFile.length() <= HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = readHeader(channel);
+            long boot = bootId();
+            boolean sameBoot = boot != UNKNOWN_BOOT && header.getLong(8) == boot;
+            long applied = header.getLong(16);
+            if (sameBoot && applied == channel.size()) {
+                return false;
+            }
+            long end = replay(channel, sameBoot ? applied : HEADER_SIZE);
+            channel.truncate(end);
+            if (sameBoot) {
+                writeHeader(channel, boot, end);
+            } else {
+                checkpoint(channel);
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Write in place the intact frames of the journal from the given position.
+     * A file deleted by one frame and named again by a later one, such as an
+     * object dropped by gc and written again, is not deleted.
+     * @return the end of the last intact frame.
+     */
+    private long replay(FileChannel channel, long from) throws IOException {
+        Map<File, Long> lastRecord = new HashMap<>();
+        long[] record = {0};
+        long at = from;
+        long length;
+        while ((length = frameLength(channel, at)) >= 0) {
+            forEachRecord(channel, at, length, (kind, file, offset, in, size) ->
+                    lastRecord.put(file, record[0]++));
+            at += FRAME_HEADER_SIZE + length;
+        }
+        long end = at;
+        record[0] = 0;
+        for (at = from; at < end; at += FRAME_HEADER_SIZE + length) {
+            length = frameLength(channel, at);
+            forEachRecord(channel, at, length, (kind, file, offset, in, size) -> {
+                long number = record[0]++;
+                if (kind == OBJECT) {
+                    /* Synced before its frame, so it is in place. */
+                    return;
+                }
+                if (kind == PACKED) {
+                    if (lastRecord.get(file) == number) {
+                        writeObject(file, in);
+                    }
+                    return;
+                }
+                if (kind == DELETE) {
+                    if (lastRecord.get(file) == number) {
+                        Files.deleteIfExists(file.toPath());
+                    }
+                    return;
+                }
+                try (FileChannel out = openForWrite(file)) {
+                    /* Written at the offset even past the end, which a lost write may have cut. */
+                    byte[] buffer = new byte[8192];
+                    long position = offset;
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        position += out.write(ByteBuffer.wrap(buffer, 0, n), position);
+                    }
+                    out.truncate(offset + size);
+                }
+            });
+        }
+        return end;
+    }
+
+    /** Write the bytes of a loose object from IN to a temporary file and
+     *  rename it into place. */
+    private static void writeObject(File file, InputStream in) throws IOException {
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Check the frame at the given position.
+     * @return the length of its records, or -1 if it is missing or torn.
+     */
+    private static long frameLength(FileChannel channel, long at) throws IOException {
+        if (at + FRAME_HEADER_SIZE > channel.size()) {
+            return -1;
+        }
+        ByteBuffer head = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        channel.read(head, at);
+        long length = head.getLong(0);
+        if (length <= 0 || at + FRAME_HEADER_SIZE + length > channel.size()) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        InputStream in = new CheckedInputStream(frameStream(channel, at, length), crc);
+        in.transferTo(OutputStream.nullOutputStream());
+        return crc.getValue() == head.getLong(8) ? length : -1;
+    }
+
+    /** Get a stream over the records of the frame at the given position. */
+    private static InputStream frameStream(FileChannel channel, long at, long length) {
+        return new BufferedInputStream(new InputStream() {
+            private long position = at + FRAME_HEADER_SIZE;
+            private final long end = position + length;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)),
+                        position);
+                position += n;
+                return n;
+            }
+        });
+    }
+
+    /** What to do with a record of a frame. */
+    private interface RecordAction {
+        /**
+         * @param kind WRITE, DELETE, OBJECT or PACKED.
+         * @param file the file of the record.
+         * @param offset where the bytes go in the file.
+         * @param in the stream, positioned at the bytes of a WRITE or a PACKED.
+         * @param size the number of bytes, or the length of an OBJECT.
+         */
+        void accept(byte kind, File file, long offset, InputStream in, long size) throws IOException;
+    }
+
+    /** Pass every record of a frame to ACTION. */
+    private void forEachRecord(FileChannel channel, long at, long length, RecordAction action)
+            throws IOException {
+        DataInputStream in = new DataInputStream(frameStream(channel, at, length));
+        while (true) {
+            int kind = in.read();
+            if (kind < 0) {
+                return;
+            }
+            File file = new File(gitletDir, Codec.readString(in));
+            if (kind == DELETE) {
+                action.accept(DELETE, file, 0, in, 0);
+                continue;
+            }
+            if (kind == OBJECT) {
+                action.accept(OBJECT, file, 0, InputStream.nullInputStream(), in.readLong());
+                continue;
+            }
+            long offset = kind == PACKED ? 0 : in.readLong();
+            long size = in.readLong();
+            InputStream bytes = limited(in, size);
+            action.accept((byte) kind, file, offset, bytes, size);
+            /* Whatever the action did not read is skipped. */
+            bytes.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    /** Get a stream over the first SIZE bytes of IN. */
+    private static InputStream limited(InputStream in, long size) {
+        return new FilterInputStream(in) {
+            private long left = size;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (left <= 0) {
+                    return -1;
+                }
+                int n = super.read(b, off, (int) Math.min(len, left));
+                if (n > 0) {
+                    left -= n;
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Sync every file named in the journal and their directories, then
+     * empty the journal.
+     */
+    private void checkpoint(FileChannel channel) throws IOException {
+        Set<File> files = new LinkedHashSet<>();
+        long at = HEADER_SIZE;
+        long length;
+        while ((length = frameLength(channel, at)) >= 0) {
+            forEachRecord(channel, at, length, (kind, file, offset, in, size) -> {
+                /* The objects of older frames were synced before them. */
+                if (kind != OBJECT) {
+                    files.add(file);
+                }
+            });
+            at += FRAME_HEADER_SIZE + length;
+        }
+        Set<File> dirs = new LinkedHashSet<>();
+        for (File file : files) {
+            if (file.isFile()) {
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    out.force(false);
+                }
+            }
+            dirs.add(file.getParentFile());
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+        channel.truncate(HEADER_SIZE);
+        writeHeader(channel, bootId(), HEADER_SIZE);
+        channel.force(false);
+    }
+
+    /** Sync the entries of a directory, where the system allows it. */
+    private static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            /* Some systems cannot sync a directory; their renames are durable anyway. */
+        }
+    }
+
+    /** Read and check the header of the journal. */
+    private ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw Utils.error("Corrupted journal %s.", journalFile);
+        }
+        return header;
+    }
+
+    /** Write the header of the journal, with the boot of its frames and their applied end. */
+    private static void writeHeader(FileChannel channel, long boot, long applied) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(boot).putLong(applied).flip();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Get a number that identifies the current boot of the system: the
+     * boot id of Linux, or else the start time of the first process.
+     * @return the number, or UNKNOWN_BOOT.
+     */
+    private static long bootId() {
+        File bootIdFile = new File("/proc/sys/kernel/random/boot_id");
+        if (bootIdFile.isFile()) {
+            try {
+                UUID id = UUID.fromString(Utils.readContentsAsString(bootIdFile).trim());
+                return id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+            } catch (IllegalArgumentException excp) {
+                /* Fall back on the first process. */
+            }
+        }
+        return ProcessHandle.of(1).flatMap(process -> process.info().startInstant())
+                .map(start -> start.toEpochMilli()).orElse(UNKNOWN_BOOT);
+    }
+
+    /** Tell the test of the recovery, if any, that the commit is at POINT. */
+    private static void crash(String point) {
+        crashPoints.accept(point);
+    }
+}
@@ -0,0 +1,120 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.TestUtils.*;
+
+/** Times committing the files of a commit through the journal, with the
+ *  new objects in the frame, against syncing every new object before the
+ *  frame and against syncing every file.  Run it as
+ *      java gitlet.JournalBenchmark [ROUNDS]
+ *  @author Zhang, Xiaochen
+ */
+public class JournalBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        File dir = tempDir("gitlet-journal");
+        try {
+            File gitletDir = new File(dir, ".gitlet");
+            File objects = new File(gitletDir, "objects");
+            new File(gitletDir, "refs/heads").mkdirs();
+            new File(gitletDir, "messages").mkdirs();
+            objects.mkdirs();
+            /* Warm up both paths before timing them. */
+            timeSynced(gitletDir, rounds / 10 + 1);
+            timeObjectsSynced(gitletDir, rounds / 10 + 1);
+            timeJournaled(gitletDir, rounds / 10 + 1);
+            double synced = timeSynced(gitletDir, rounds);
+            double objectsSynced = timeObjectsSynced(gitletDir, rounds);
+            double journaled = timeJournaled(gitletDir, rounds);
+            System.out.printf("%d commits: every file synced %.3f ms per commit;"
+                    + " objects synced, then journaled %.3f ms per commit;"
+                    + " journaled %.3f ms per commit; speedup %.1fx and %.1fx%n",
+                    rounds, synced / rounds, objectsSynced / rounds, journaled / rounds,
+                    synced / journaled, objectsSynced / journaled);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Returns the files a commit writes: two objects, the log, the message
+     *  index, the commit graph, the commit id index, the ref and the index. */
+    private static List<File> commitFiles(File gitletDir, int round) {
+        List<File> files = new ArrayList<>();
+        files.add(new File(gitletDir, "objects/" + Utils.sha1("blob " + round)));
+        files.add(new File(gitletDir, "objects/" + Utils.sha1("commit " + round)));
+        files.add(new File(gitletDir, "commit-log"));
+        files.add(new File(gitletDir, "messages/" + Utils.sha1("message " + round)));
+        files.add(new File(gitletDir, "commit-graph"));
+        files.add(new File(gitletDir, "commit-ids"));
+        files.add(new File(gitletDir, "refs/heads/master"));
+        files.add(new File(gitletDir, "index"));
+        return files;
+    }
+
+    /** Returns the milliseconds needed to write and sync the files of ROUNDS commits. */
+    private static double timeSynced(File gitletDir, int rounds) throws IOException {
+        byte[] content = new byte[64];
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (File file : commitFiles(gitletDir, i)) {
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    out.write(ByteBuffer.wrap(content));
+                    out.force(false);
+                }
+            }
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Returns the milliseconds needed to write and sync the objects of ROUNDS
+     *  commits one by one and then commit the other files through the journal. */
+    private static double timeObjectsSynced(File gitletDir, int rounds) throws IOException {
+        byte[] content = new byte[64];
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            List<File> files = commitFiles(gitletDir, i);
+            for (File file : files.subList(0, 2)) {
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    out.write(ByteBuffer.wrap(content));
+                    out.force(false);
+                }
+            }
+            try (FileChannel dir = FileChannel.open(new File(gitletDir, "objects").toPath(),
+                    StandardOpenOption.READ)) {
+                dir.force(true);
+            }
+            Journal.run(gitletDir, () -> {
+                for (File file : files.subList(2, files.size())) {
+                    Utils.writeContents(file, content);
+                }
+            });
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Returns the milliseconds needed to commit the files of ROUNDS commits
+     *  through the journal. */
+    private static double timeJournaled(File gitletDir, int rounds) {
+        byte[] content = new byte[64];
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            List<File> files = commitFiles(gitletDir, i);
+            Journal.run(gitletDir, () -> {
+                for (File file : files) {
+                    Utils.writeContents(file, content);
+                }
+            });
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
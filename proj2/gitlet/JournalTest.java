@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.TestUtils.*;
+
+/** Tests the recovery of the journal from commands that crashed.  Run it as
+ *      java gitlet.JournalTest
+ *  @author Zhang, Xiaochen
+ */
+public class JournalTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        /* A crash while the frame is written loses the commit. */
+        checkCrash("frame", false);
+        /* A crash after the frame is synced keeps it, written in place by the next command. */
+        checkCrash("apply", true);
+        checkCrash("half", true);
+        checkRebootAfterGc();
+        checkRebootLosesObjects();
+        finish("journal");
+    }
+
+    /** Runs gitlet with the arguments after the first, and stops the process
+     *  dead when the commit reaches the point named by the first. */
+    public static class CrashingMain {
+        public static void main(String[] args) {
+            String point = args[0];
+            Journal.crashPoints = at -> {
+                if (at.equals(point)) {
+                    System.out.flush();
+                    Runtime.getRuntime().halt(3);
+                }
+            };
+            Main.main(Arrays.copyOfRange(args, 1, args.length));
+        }
+    }
+
+    /** Crash a commit at POINT in a new repository, then check that the next
+     *  commands see the repository with the commit if COMMITTED, and as it
+     *  was before otherwise. */
+    private static void checkCrash(String point, boolean committed)
+            throws IOException, InterruptedException {
+        File dir = tempDir("gitlet-journal");
+        String test = "crash at " + point;
+        try {
+            gitlet(dir, "init");
+            Files.writeString(new File(dir, "a.txt").toPath(), "a\n");
+            gitlet(dir, "add", "a.txt");
+            gitlet(dir, "commit", "one");
+            Files.writeString(new File(dir, "b.txt").toPath(), "b\n");
+            gitlet(dir, "add", "b.txt");
+            runMain(dir, CrashingMain.class, point, "commit", "two");
+
+            int commits = committed ? 3 : 2;
+            check(test, "log", count(gitlet(dir, "log"), "===") == commits);
+            check(test, "global-log", count(gitlet(dir, "global-log"), "===") == commits);
+            String found = gitlet(dir, "find", "two");
+            check(test, "find", committed != found.startsWith("Found no commit"));
+            String status = gitlet(dir, "status");
+            check(test, "status", committed != status.contains("=== Staged Files ===\nb.txt\n"));
+            /* The repository goes on working from there. */
+            if (!committed) {
+                gitlet(dir, "commit", "two");
+            }
+            Files.writeString(new File(dir, "c.txt").toPath(), "c\n");
+            gitlet(dir, "add", "c.txt");
+            gitlet(dir, "commit", "three");
+            check(test, "next commit", count(gitlet(dir, "global-log"), "===") == 4);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Drop a blob with gc and write it again, then make the next command
+     *  replay the whole journal as after a reboot, and check that the blob
+     *  is kept. */
+    private static void checkRebootAfterGc() throws IOException, InterruptedException {
+        File dir = tempDir("gitlet-journal");
+        String test = "reboot after gc";
+        try {
+            gitlet(dir, "init");
+            Files.writeString(new File(dir, "f.txt").toPath(), "f\n");
+            gitlet(dir, "add", "f.txt");
+            gitlet(dir, "rm", "f.txt");
+            gitlet(dir, "gc");
+            gitlet(dir, "add", "f.txt");
+            gitlet(dir, "commit", "one");
+            reboot(dir);
+            gitlet(dir, "status");
+            Files.delete(new File(dir, "f.txt").toPath());
+            gitlet(dir, "checkout", "--", "f.txt");
+            check(test, "checkout", read(dir, "f.txt").equals("f\n"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Commit, then lose the new loose objects, which are not synced, as a
+     *  reboot may, and check that the next command writes them again from
+     *  the journal. */
+    private static void checkRebootLosesObjects() throws IOException, InterruptedException {
+        File dir = tempDir("gitlet-journal");
+        String test = "objects lost in a reboot";
+        try {
+            gitlet(dir, "init");
+            File objects = new File(dir, ".gitlet/objects");
+            List<String> before = List.of(objects.list());
+            Files.writeString(new File(dir, "f.txt").toPath(), "f\n");
+            gitlet(dir, "add", "f.txt");
+            gitlet(dir, "commit", "one");
+            for (String name : objects.list()) {
+                if (!before.contains(name) && Pack.isObjectId(name)) {
+                    Files.delete(new File(objects, name).toPath());
+                }
+            }
+            reboot(dir);
+            check(test, "log", gitlet(dir, "log").contains("\none\n"));
+            Files.delete(new File(dir, "f.txt").toPath());
+            gitlet(dir, "checkout", "--", "f.txt");
+            check(test, "checkout", read(dir, "f.txt").equals("f\n"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Make the next command in DIR replay the whole journal, as after a
+     *  reboot, by giving its header a boot other than the current one. */
+    private static void reboot(File dir) throws IOException {
+        try (RandomAccessFile journal = new RandomAccessFile(new File(dir, ".gitlet/journal"), "rw")) {
+            journal.seek(8);
+            long boot = journal.readLong();
+            journal.seek(8);
+            journal.writeLong(boot + 1);
+        }
+    }
+
+    /** Returns the number of lines of TEXT equal to LINE. */
+    private static int count(String text, String line) {
+        int n = 0;
+        for (String l : text.split("\n")) {
+            if (l.equals(line)) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+}
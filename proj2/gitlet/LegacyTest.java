@@ -0,0 +1,55 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import static gitlet.TestUtils.*;
+
+/** Tests that a repository made by the first version of gitlet, which
+ *  Java-serialized its commits, blobs, head and remotes, is still read:
+ *  copies the repository in testing/legacy/baseline, which has commits
+ *  "one" and "two" on master, a branch side, a remote origin and a staged
+ *  file, and runs the commands on it.  Run it from proj2 as
+ *      java gitlet.LegacyTest [REPOSITORY]
+ *  @author Zhang, Xiaochen
+ */
+public class LegacyTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File fixture = new File(args.length > 0 ? args[0] : "testing/legacy/baseline");
+        File dir = tempDir("gitlet-legacy");
+        try {
+            copy(fixture, dir);
+            /* The commit log is built by the first command, which dies half way. */
+            runMain(dir, JournalTest.CrashingMain.class, "half", "global-log");
+            /* Merge loads the old stage and fails without saving it. */
+            check("legacy", "merge", gitlet(dir, "merge", "side").trim()
+                    .equals("You have uncommitted changes."));
+            check("legacy", "status", gitlet(dir, "status").startsWith(
+                    "=== Branches ===\n*master\nside\n\n=== Staged Files ===\ns.txt\n\n"));
+            String log = gitlet(dir, "log");
+            check("legacy", "log", log.contains("\ntwo\n") && log.contains("\none\n")
+                    && log.contains("\ninitial commit\n"));
+            check("legacy", "find", gitlet(dir, "find", "one").trim()
+                    .equals("f04468e3eb731052de317abc523ebf945c1e2f6d"));
+            /* The remote is read; the directory it names is not copied. */
+            check("legacy", "remote", gitlet(dir, "push", "origin", "master").trim()
+                    .equals("Remote directory not found."));
+
+            gitlet(dir, "commit", "three");
+            check("legacy", "commit", gitlet(dir, "log").startsWith("===")
+                    && gitlet(dir, "status").contains("=== Staged Files ===\n\n"));
+            gitlet(dir, "checkout", "side");
+            check("legacy", "checkout side", read(dir, "a.txt").equals("hi\n")
+                    && !new File(dir, "s.txt").exists());
+            gitlet(dir, "checkout", "master");
+            check("legacy", "checkout master", read(dir, "a.txt").equals("ho\n")
+                    && read(dir, "s.txt").equals("staged\n"));
+            String globalLog = gitlet(dir, "global-log");
+            check("legacy", "global-log", globalLog.contains("\nthree\n") && globalLog.contains("\none\n"));
+        } finally {
+            delete(dir);
+        }
+        finish("legacy");
+    }
+}
@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.File;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Zhang, Xiaochen
@@ -11,10 +12,51 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        /* Sent to the daemon of the repository if one is running, see Daemon. */
+        int status = Daemon.forward(args);
+        if (status < 0) {
+            status = 0;
+            try {
+                if (args.length > 0 && args[0].equals("daemon")) {
+                    /* The daemon takes the lock for each command it runs. */
+                    run(args);
+                } else {
+                    Daemon.runLocked(() -> run(args));
+                }
+            } catch (Exit exit) {
+                status = exit.status;
+            }
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Thrown by exit to end the command, once what it wrote is committed. */
+    static class Exit extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        /** The exit status. */
+        private final int status;
+
+        Exit(int status) {
+            super(null, null, false, false);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Run a command, in this process or in the daemon.
+     * @param args the command and its operands.
+     */
+    static void run(String[] args) {
         /* If the args[] is empty */
         if (args.length == 0) {
             Utils.message("Please enter a command.");
-            System.exit(0);
+            exit(0);
         }
         String firstArg = args[0];
         switch(firstArg) {
@@ -23,9 +65,12 @@ public class Main {
                 Repository.gitInit();
                 break;
             case "add":
-                checkOperands(args.length, 2);
+                /* add takes one or more file names or glob patterns. */
+                if (args.length < 2) {
+                    checkOperands(args.length, 2);
+                }
                 checkGitdirectory();
-                Repository.gitAdd(args[1]);
+                Repository.gitAdd(Arrays.copyOfRange(args, 1, args.length));
                 break;
             case "commit":
                 checkOperands(args.length, 2);
@@ -38,8 +83,8 @@ public class Main {
                 break;
             case "log":
                 checkGitdirectory();
-                checkOperands(args.length, 1);
-                Repository.gitLog();
+                int[] range = logRange(args);
+                Repository.gitLog(range[0], range[1]);
                 break;
             case "global-log":
                 checkGitdirectory();
@@ -105,13 +150,57 @@ public class Main {
                 checkOperands(args.length, 3);
                 Repository.gitPull(args[1], args[2]);
                 break;
+            case "repack":
+                checkGitdirectory();
+                /* repack takes the longest chain of deltas as --depth N. */
+                if (args.length == 3 && args[1].equals("--depth") && args[2].matches("\\d{1,9}")) {
+                    Repository.gitRepack(Integer.parseInt(args[2]));
+                } else {
+                    checkOperands(args.length, 1);
+                    Repository.gitRepack(Pack.DEFAULT_DELTA_DEPTH);
+                }
+                break;
+            case "gc":
+                checkGitdirectory();
+                checkOperands(args.length, 1);
+                Repository.gitGc();
+                break;
+            case "diff":
+                checkGitdirectory();
+                /* diff takes up to two commit ids. */
+                if (args.length > 3) {
+                    checkOperands(args.length, 3);
+                }
+                Repository.gitDiff(Arrays.copyOfRange(args, 1, args.length));
+                break;
+            case "daemon":
+                checkGitdirectory();
+                if (args.length == 2 && args[1].equals("stop")) {
+                    Daemon.stop();
+                } else if (args.length == 2 && args[1].equals("status")) {
+                    Daemon.status();
+                } else {
+                    checkOperands(args.length, 1);
+                    Daemon.serve();
+                }
+                break;
             default:
                 checkGitdirectory();
                 Utils.message("No command with that name exists.");
-                System.exit(0);
+                exit(0);
         }
     }
 
+    /**
+     * End the command with the given exit status.  What the command wrote
+     * is committed first, see Journal; in the daemon, the command ends but
+     * the process goes on serving.
+     * @param status the exit status.
+     */
+    static void exit(int status) {
+        throw new Exit(status);
+    }
+
     /**
      * Check if the current directory is a Gitlet directory.
      */
@@ -119,8 +208,27 @@ public class Main {
         File f = Utils.join(Repository.CWD, ".gitlet");
         if (!f.exists()) {
             Utils.message("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            exit(0);
+        }
+    }
+
+    /**
+     * Read the options of log: "-n COUNT", the most commits to print, and
+     * "--skip COUNT", the number of commits to pass over first.
+     * Exits with an error if an option is unknown or its count is no number.
+     * @param args the command and its operands.
+     * @return the number of commits to skip and the most to print.
+     */
+    private static int[] logRange(String[] args) {
+        int[] range = {0, Integer.MAX_VALUE};
+        for (int i = 1; i < args.length; i += 2) {
+            int option = args[i].equals("--skip") ? 0 : args[i].equals("-n") ? 1 : -1;
+            if (option < 0 || i + 1 == args.length || !args[i + 1].matches("\\d{1,9}")) {
+                checkOperands(args.length, 1);
+            }
+            range[option] = Integer.parseInt(args[i + 1]);
         }
+        return range;
     }
 
     /**
@@ -131,7 +239,7 @@ public class Main {
     private static void checkOperands (int arrayNum, int num) {
         if (arrayNum != num) {
             Utils.message("Incorrect operands.");
-            System.exit(0);
+            exit(0);
         }
     }
 }
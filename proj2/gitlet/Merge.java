@@ -0,0 +1,146 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The three-way line merge of a file that both branches changed since the
+ * split point, as diff3 does it.  Each side is diffed against the version
+ * at the split point, see Diff; the lines of the split point that both
+ * sides kept are stable, and between them lie the hunks that changed.
+ * A hunk changed on one side only is taken from that side, one changed the
+ * same way on both sides is taken once, and only a hunk changed differently
+ * on both sides is a conflict, written between the markers of gitlet:
+ *   <<<<<<< HEAD
+ *   the lines of the current branch
+ *   =======
+ *   the lines of the given branch
+ *   >>>>>>>
+ * A binary file, or a file deleted on one side, is one conflict as a whole.
+ * The result is written to a stream as it is found, line by line.
+ *  @Author Zhang, Xiaochen
+ */
+class Merge {
+    /** The markers around the two sides of a conflict. */
+    private static final byte[] OURS_MARKER = "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = "=======\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] THEIRS_MARKER = ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** The contents of the split point, the current and the given version. */
+    private final byte[][] contents;
+    /** The line starts of each version. */
+    private final int[][] starts;
+    /** The numbers of the lines of each version. */
+    private final int[][] lines;
+    /** Where the merge is written. */
+    private final OutputStream out;
+    /** The number of conflicting hunks written. */
+    private int conflicts;
+
+    private Merge(byte[] base, byte[] ours, byte[] theirs, OutputStream out) {
+        this.contents = new byte[][]{base, ours, theirs};
+        this.starts = new int[][]{Diff.lineStarts(base), Diff.lineStarts(ours), Diff.lineStarts(theirs)};
+        this.lines = Diff.number(contents, starts);
+        this.out = out;
+    }
+
+    /**
+     * Merge the changes of two versions of a file since their split point.
+     * @param base the content at the split point, or null if the file was not there.
+     * @param ours the content in the current branch, or null if it was deleted.
+     * @param theirs the content in the given branch, or null if it was deleted.
+     * @param out where the merged content is written.
+     * @return the number of conflicting hunks, 0 if the merge is clean.
+     */
+    static int merge(byte[] base, byte[] ours, byte[] theirs, OutputStream out) throws IOException {
+        if (ours == null || theirs == null || Diff.isBinary(ours) || Diff.isBinary(theirs)
+                || (base != null && Diff.isBinary(base))) {
+            writeConflict(out, ours, theirs);
+            return 1;
+        }
+        Merge merge = new Merge(base == null ? new byte[0] : base, ours, theirs, out);
+        merge.run();
+        return merge.conflicts;
+    }
+
+    /** Write OURS and THEIRS, either of which may be null, as one conflict to OUT. */
+    private static void writeConflict(OutputStream out, byte[] ours, byte[] theirs) throws IOException {
+        out.write(OURS_MARKER);
+        if (ours != null) {
+            out.write(ours);
+        }
+        out.write(SEPARATOR);
+        if (theirs != null) {
+            out.write(theirs);
+        }
+        out.write(THEIRS_MARKER);
+    }
+
+    /** Walk the three versions from stable line to stable line, writing each hunk. */
+    private void run() throws IOException {
+        int[] oursMatch = Diff.match(lines[0], lines[1]);
+        int[] theirsMatch = Diff.match(lines[0], lines[2]);
+        int baseCount = lines[0].length;
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < baseCount || j < lines[1].length || k < lines[2].length) {
+            /* Copy the stable lines. */
+            int stable = i;
+            while (stable < baseCount && oursMatch[stable] == j + stable - i
+                    && theirsMatch[stable] == k + stable - i) {
+                stable += 1;
+            }
+            if (stable > i) {
+                write(0, i, stable);
+                j += stable - i;
+                k += stable - i;
+                i = stable;
+                continue;
+            }
+            /* Find the next stable line, or the ends, and merge the hunk before it. */
+            int nextI = i;
+            while (nextI < baseCount && (oursMatch[nextI] < 0 || theirsMatch[nextI] < 0)) {
+                nextI += 1;
+            }
+            int nextJ = nextI < baseCount ? oursMatch[nextI] : lines[1].length;
+            int nextK = nextI < baseCount ? theirsMatch[nextI] : lines[2].length;
+            boolean oursChanged = !same(0, i, nextI, 1, j, nextJ);
+            boolean theirsChanged = !same(0, i, nextI, 2, k, nextK);
+            if (!oursChanged) {
+                write(2, k, nextK);
+            } else if (!theirsChanged || same(1, j, nextJ, 2, k, nextK)) {
+                write(1, j, nextJ);
+            } else {
+                out.write(OURS_MARKER);
+                write(1, j, nextJ);
+                out.write(SEPARATOR);
+                write(2, k, nextK);
+                out.write(THEIRS_MARKER);
+                conflicts += 1;
+            }
+            i = nextI;
+            j = nextJ;
+            k = nextK;
+        }
+    }
+
+    /** Check if lines FROM1 to TO1 of version V1 are the lines FROM2 to TO2 of version V2. */
+    private boolean same(int v1, int from1, int to1, int v2, int from2, int to2) {
+        if (to1 - from1 != to2 - from2) {
+            return false;
+        }
+        for (int t = 0; t < to1 - from1; t++) {
+            if (lines[v1][from1 + t] != lines[v2][from2 + t]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write lines FROM to TO of version V. */
+    private void write(int v, int from, int to) throws IOException {
+        out.write(contents[v], starts[v][from], starts[v][to] - starts[v][from]);
+    }
+}
@@ -0,0 +1,26 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/** Times merging large files with many small independent edits on both
+ *  sides.  Run it as
+ *      java gitlet.MergeBenchmark [LINES]
+ *  @author Zhang, Xiaochen
+ */
+public class MergeBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        byte[][] versions = MergeTest.makeVersions(lineCount, new Random(21));
+        /* Warm up before timing. */
+        Merge.merge(versions[0], versions[1], versions[2], new ByteArrayOutputStream());
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(versions[3].length);
+        Merge.merge(versions[0], versions[1], versions[2], out);
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("Merged %d lines with %d edits on each side in %.1f ms (%.1f MB/s)%n",
+                lineCount, lineCount / 100, millis, versions[0].length / millis / 1e3);
+    }
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.TestUtils.*;
+
+/** Tests the line diff and the three-way merge of merge conflicts: checks
+ *  that Diff matches as many lines as a longest common subsequence on small
+ *  random files, checks merges with clean, conflicting and non-ASCII hunks,
+ *  and of large files with many small independent edits on both sides.
+ *  Run it as
+ *      java gitlet.MergeTest [LINES]
+ *  @author Zhang, Xiaochen
+ */
+public class MergeTest {
+
+    public static void main(String[] args) throws IOException {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Random random = new Random(21);
+        for (int round = 0; round < 500; round++) {
+            int[] a = randomLines(random, random.nextInt(40));
+            int[] b = randomLines(random, random.nextInt(40));
+            check("merge", "shortest edit script " + round, matched(Diff.match(a, b), a, b) == lcs(a, b));
+        }
+
+        check("merge", "clean", merge("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n")
+                .equals("A\nb\nc\nd\nE\n"));
+        check("merge", "same change", merge("a\nb\n", "a\nB\n", "a\nB\n").equals("a\nB\n"));
+        check("merge", "conflict", merge("a\nb\nc\nd\ne\n", "a\nB\nc\nd\nE\n", "a\nX\nc\nd\ne\n")
+                .equals("a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\nc\nd\nE\n"));
+        check("merge", "added on both sides", merge(null, "wug\n", "not wug\n")
+                .equals("<<<<<<< HEAD\nwug\n=======\nnot wug\n>>>>>>>\n"));
+        check("merge", "deleted", merge("a\n", null, "b\n").equals("<<<<<<< HEAD\n=======\nb\n>>>>>>>\n"));
+        check("merge", "non-ASCII", merge("héllo\n—\nwörld\n", "héllo\n—\nwörld!\n", "hällo\n—\nwörld\n")
+                .equals("hällo\n—\nwörld!\n"));
+
+        byte[][] versions = makeVersions(lineCount, random);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(versions[3].length);
+        int conflicts = Merge.merge(versions[0], versions[1], versions[2], out);
+        check("merge", "large merge", conflicts == 0 && Arrays.equals(out.toByteArray(), versions[3]));
+
+        finish("merge");
+    }
+
+    /** Returns the merge of OURS and THEIRS since BASE, any of which may be null. */
+    private static String merge(String base, String ours, String theirs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Merge.merge(bytes(base), bytes(ours), bytes(theirs), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns N line numbers drawn from a few, so that many lines repeat. */
+    private static int[] randomLines(Random random, int n) {
+        int[] lines = new int[n];
+        for (int i = 0; i < n; i++) {
+            lines[i] = random.nextInt(5);
+        }
+        return lines;
+    }
+
+    /** Returns the number of lines MATCH keeps, checking that they are equal and in order. */
+    private static int matched(int[] match, int[] a, int[] b) {
+        int count = 0;
+        int last = -1;
+        for (int i = 0; i < a.length; i++) {
+            if (match[i] >= 0) {
+                if (match[i] <= last || a[i] != b[match[i]]) {
+                    return -1;
+                }
+                last = match[i];
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Returns the length of a longest common subsequence of A and B. */
+    private static int lcs(int[] a, int[] b) {
+        int[][] table = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i--) {
+            for (int j = b.length - 1; j >= 0; j--) {
+                table[i][j] = a[i] == b[j] ? table[i + 1][j + 1] + 1
+                        : Math.max(table[i + 1][j], table[i][j + 1]);
+            }
+        }
+        return table[0][0];
+    }
+
+    /** Returns a base of N lines, two versions that each edit one line in
+     *  every hundred, at different places, and the merge of both. */
+    static byte[][] makeVersions(int n, Random random) {
+        List<String> base = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            base.add("line " + i + " " + random.nextInt(1000) + "\n");
+        }
+        List<String> ours = new ArrayList<>(base);
+        List<String> theirs = new ArrayList<>(base);
+        List<String> merged = new ArrayList<>(base);
+        for (int i = 0; i + 100 <= n; i += 100) {
+            int o = i + random.nextInt(50);
+            int t = i + 50 + random.nextInt(50);
+            ours.set(o, "ours " + o + "\n");
+            merged.set(o, "ours " + o + "\n");
+            theirs.set(t, "theirs " + t + "\n");
+            merged.set(t, "theirs " + t + "\n");
+        }
+        return new byte[][]{join(base), join(ours), join(theirs), join(merged)};
+    }
+
+    private static byte[] join(List<String> lines) {
+        return String.join("", lines).getBytes(StandardCharsets.UTF_8);
+    }
+}
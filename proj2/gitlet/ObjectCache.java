@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded least-recently-used cache of objects read from the objects
+ * directory.  Gitlet objects are named by their SHA-1 hash and never change,
+ * so an object read once can be handed out again for the rest of the command
+ * instead of being read and decoded from disk each time it is visited.
+ * The cache counts its hits and misses.
+ *  @Author Zhang, Xiaochen
+ */
+class ObjectCache<V> {
+    /** The cached objects by key, from the least to the most recently used. */
+    private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** The largest total weight kept in the cache. */
+    private final long capacity;
+    /** The weight of an object, such as 1 or its size in bytes. */
+    private final ToLongFunction<V> weigher;
+    /** The total weight of the cached objects. */
+    private long weight;
+    /** The number of lookups answered from the cache. */
+    private long hits;
+    /** The number of lookups that had to load the object. */
+    private long misses;
+
+    /**
+     * Make an empty cache.
+     * @param capacity the largest total weight kept in the cache.
+     * @param weigher the weight of an object.
+     */
+    ObjectCache(long capacity, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get the object with the given key, loading and caching it on a miss.
+     * An object heavier than the whole capacity is returned without being cached.
+     * @param key the key of the object, such as the path of its file.
+     * @param loader reads the object of a key from disk.
+     */
+    V get(String key, Function<String, V> loader) {
+        synchronized (this) {
+            V value = entries.get(key);
+            if (value != null) {
+                hits += 1;
+                return value;
+            }
+            misses += 1;
+        }
+        /* Load outside the lock, so that other threads may use the cache meanwhile. */
+        V value = loader.apply(key);
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > capacity) {
+            return value;
+        }
+        synchronized (this) {
+            V old = entries.put(key, value);
+            if (old != null) {
+                weight -= weigher.applyAsLong(old);
+            }
+            weight += valueWeight;
+            evict();
+        }
+        return value;
+    }
+
+    /** Drop the least recently used objects until the cache fits its capacity. */
+    private void evict() {
+        Iterator<Map.Entry<String, V>> iterator = entries.entrySet().iterator();
+        while (weight > capacity && iterator.hasNext()) {
+            Map.Entry<String, V> eldest = iterator.next();
+            weight -= weigher.applyAsLong(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /** Drop every cached object.  The counters are kept. */
+    synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits, %d misses, %d cached", hits, misses, entries.size());
+    }
+}
@@ -0,0 +1,734 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An append-only pack of gitlet objects together with its offset index.
+ * Every objects directory owns at most one pack, kept as
+ * objects/pack/pack.pack and objects/pack/pack.idx.
+ * The pack is the plain concatenation of the objects' bytes, and the index
+ * maps every object id to the offset and the length of its bytes, so that a
+ * lookup costs one binary search in the index and one read in the pack.
+ * A blob may instead be stored as a delta against another blob of the pack,
+ * usually the same file in the parent commit: the delta magic number, the id
+ * of the base and the Deflate-compressed Delta.  Such a blob is read back by
+ * applying the deltas of its chain to the content of the first base, and the
+ * contents rebuilt on the way are cached, since the versions of a file tend
+ * to be read together.  Chains are kept at most a given depth long.
+ * Whether an object exists is answered from memory where it can be: from the
+ * mapped index for a packed object, and for a loose one from a Bloom filter
+ * of the objects directory, made by listing it once, so that only an object
+ * the filter may hold costs a look at the disk.
+ *  @Author Zhang, Xiaochen
+ */
+public class Pack {
+
+    /** The name of the pack directory inside an objects directory. */
+    static final String PACK_DIR_NAME = "pack";
+    /** The magic number at the head of an index file, "GIDX". */
+    private static final int IDX_MAGIC = 0x47494458;
+    /** The version of the index format. */
+    private static final int IDX_VERSION = 1;
+    /** The raw length of an object id. */
+    private static final int ID_BYTES = Utils.UID_LENGTH / 2;
+    /** The size of one index entry: id, offset and length. */
+    private static final int ENTRY_SIZE = ID_BYTES + 8 + 4;
+    /** The size of the index header: magic, version and the fanout table. */
+    private static final int HEADER_SIZE = 4 + 4 + 256 * 4;
+    /** The magic number at the head of a delta in the pack, "GDLT". */
+    private static final int DELTA_MAGIC = 0x47444c54;
+    /** The size of the head of a delta: magic and the id of the base. */
+    private static final int DELTA_HEADER_SIZE = 4 + ID_BYTES;
+    /** The longest chain of deltas that repack makes by default. */
+    static final int DEFAULT_DELTA_DEPTH = 10;
+    /** The total size of the rebuilt blob contents kept in the cache, 32 MiB. */
+    private static final long BASE_CACHE_BYTES = 32 * 1024 * 1024;
+    /** The contents of the blobs rebuilt from deltas or used as bases, by pack and id. */
+    static final ObjectCache<byte[]> BASES = new ObjectCache<>(BASE_CACHE_BYTES, content -> content.length);
+    /** What the cache of contents holds for an object that is no blob in one piece. */
+    private static final byte[] NO_CONTENT = new byte[0];
+    /** The least number of ids the filter of the loose objects is sized for. */
+    private static final int LOOSE_FILTER_MIN_IDS = 64 * 1024;
+    /** The packs opened by this process, one per objects directory. */
+    private static final Map<File, Pack> OPENED = new HashMap<>();
+
+    /** The objects directory of this pack. */
+    private final File objectsDir;
+    /** The pack file. */
+    private final File packFile;
+    /** The index file. */
+    private final File idxFile;
+    /** The mapped index, or null if this pack is still empty. */
+    private ByteBuffer idx;
+    /** The number of objects in the index. */
+    private int count;
+    /** The index file as this pack last read it. */
+    private FileStamp stamp;
+    /** The offsets and lengths of all the objects, by id, while append runs,
+     *  so that the objects appended so far can be read as bases. */
+    private TreeMap<String, long[]> appending;
+    /** The Bloom filter of the loose objects, or null until it is first needed. */
+    private BloomFilter loose;
+    /** The objects directory as it was when it was listed for the filter. */
+    private FileStamp looseStamp;
+
+    private Pack(File objectsDir) {
+        this.objectsDir = objectsDir;
+        File packDir = Utils.join(objectsDir, PACK_DIR_NAME);
+        this.packFile = Utils.join(packDir, "pack.pack");
+        this.idxFile = Utils.join(packDir, "pack.idx");
+        finishRewrite();
+        loadIndex();
+    }
+
+    /**
+     * Get the pack of the given objects directory.
+     * @param objectsDir the objects directory, local or remote.
+     * @return the pack, which may be empty.
+     */
+    static synchronized Pack of(File objectsDir) {
+        File key = objectsDir.getAbsoluteFile();
+        Pack pack = OPENED.get(key);
+        if (pack == null) {
+            pack = new Pack(key);
+            OPENED.put(key, pack);
+        }
+        return pack;
+    }
+
+    /** Forget the packs whose index another process has rewritten since it was read. */
+    static synchronized void refresh() {
+        OPENED.values().removeIf(pack -> pack.stamp.isStale(pack.idxFile));
+        for (Pack pack : OPENED.values()) {
+            synchronized (pack) {
+                if (pack.loose != null && pack.looseStamp.isStale(pack.objectsDir)) {
+                    pack.loose = null;
+                }
+            }
+        }
+    }
+
+    /** Take new stamps of the objects directories, once this process wrote its loose objects. */
+    static synchronized void restamp() {
+        for (Pack pack : OPENED.values()) {
+            synchronized (pack) {
+                pack.looseStamp = FileStamp.of(pack.objectsDir);
+            }
+        }
+    }
+
+    /** Forget all the packs opened so far, so that they are read again when next used. */
+    static synchronized void forget() {
+        OPENED.clear();
+    }
+
+    /** Map the index file into memory, if there is one. */
+    private void loadIndex() {
+        idx = null;
+        count = 0;
+        stamp = FileStamp.of(idxFile);
+        if (!idxFile.isFile()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(idxFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != IDX_MAGIC || buffer.getInt(4) != IDX_VERSION) {
+                throw Utils.error("Corrupted pack index %s.", idxFile);
+            }
+            idx = buffer;
+            count = buffer.getInt(HEADER_SIZE - 4);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Find the index entry of the object with the given id.
+     * @param id the full object id.
+     * @return the position of its entry, or -1 if it is not in this pack.
+     */
+    private int find(String id) {
+        if (idx == null || id.length() != Utils.UID_LENGTH) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        int first = key[0] & 0xff;
+        /* The fanout table narrows the search to the ids sharing the first byte. */
+        int lo = first == 0 ? 0 : idx.getInt(8 + (first - 1) * 4);
+        int hi = idx.getInt(8 + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareEntry(mid, key);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int compareEntry(int entry, byte[] key) {
+        int base = HEADER_SIZE + entry * ENTRY_SIZE;
+        for (int i = 0; i < ID_BYTES; i++) {
+            int cmp = Integer.compare(idx.get(base + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Check if the object with the given id is in this pack.
+     * @param id the full object id.
+     */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /**
+     * Read the bytes of the object with the given id.
+     * @param id the full object id.
+     * @return the bytes of the object, or null if it is not in this pack.
+     */
+    byte[] read(String id) {
+        byte[] stored = readStored(id);
+        if (stored == null || !isDelta(stored)) {
+            return stored;
+        }
+        return Blobs.rawObject(content(id));
+    }
+
+    /**
+     * Find the offset and the length of the object with the given id.
+     * @param id the full object id.
+     * @return the offset and the length, or null if it is not in this pack.
+     */
+    private long[] locate(String id) {
+        if (appending != null) {
+            return appending.get(id);
+        }
+        int entry = find(id);
+        if (entry < 0) {
+            return null;
+        }
+        int base = HEADER_SIZE + entry * ENTRY_SIZE;
+        return new long[]{idx.getLong(base + ID_BYTES), idx.getInt(base + ID_BYTES + 8)};
+    }
+
+    /**
+     * Read the bytes stored for the object with the given id, which are
+     * a delta if it is stored as one.
+     * @param id the full object id.
+     * @return the bytes, or null if the object is not in this pack.
+     */
+    private byte[] readStored(String id) {
+        long[] location = locate(id);
+        if (location == null) {
+            return null;
+        }
+        byte[] result = new byte[(int) location[1]];
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(location[0]);
+            in.readFully(result);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Check if STORED, the bytes stored for an object, is a delta. */
+    private static boolean isDelta(byte[] stored) {
+        return stored.length >= DELTA_HEADER_SIZE && ByteBuffer.wrap(stored).getInt() == DELTA_MAGIC;
+    }
+
+    /** Get the id of the base of the delta STORED. */
+    private static String deltaBase(byte[] stored) {
+        return Utils.toHex(Arrays.copyOfRange(stored, 4, DELTA_HEADER_SIZE));
+    }
+
+    /**
+     * Get the content of a blob of this pack that is in one piece, rebuilding
+     * it from its chain of deltas if it is stored as a delta.
+     * @param id the id of the blob.
+     * @return the content, or null if the object is not such a blob.
+     */
+    private byte[] content(String id) {
+        byte[] content = BASES.get(packFile.getPath() + ":" + id, key -> {
+            byte[] stored = readStored(id);
+            if (stored == null) {
+                throw Utils.error("Missing object %s in the pack.", id);
+            }
+            if (!isDelta(stored)) {
+                byte[] whole = Blobs.inflate(stored);
+                return whole == null ? NO_CONTENT : whole;
+            }
+            byte[] base = content(deltaBase(stored));
+            if (base == null) {
+                throw Utils.error("Missing delta base of %s.", id);
+            }
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(
+                    stored, DELTA_HEADER_SIZE, stored.length - DELTA_HEADER_SIZE))) {
+                return Delta.apply(base, in.readAllBytes());
+            } catch (IOException excp) {
+                throw Utils.error("Corrupted delta of %s.", id);
+            }
+        });
+        return content == NO_CONTENT ? null : content;
+    }
+
+    /**
+     * Open a stream over the bytes of the object with the given id,
+     * without reading the whole object into memory.
+     * @param id the full object id.
+     * @return the stream, or null if the object is not in this pack.
+     */
+    InputStream openStream(String id) {
+        int entry = find(id);
+        if (entry < 0) {
+            return null;
+        }
+        int base = HEADER_SIZE + entry * ENTRY_SIZE;
+        long offset = idx.getLong(base + ID_BYTES);
+        int length = idx.getInt(base + ID_BYTES + 8);
+        if (length >= DELTA_HEADER_SIZE && isDeltaAt(offset)) {
+            /* A delta is rebuilt in memory; blobs this large are chunked anyway. */
+            return new ByteArrayInputStream(read(id));
+        }
+        try {
+            FileChannel channel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+            channel.position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            return new BufferedInputStream(new FilterInputStream(in) {
+                private long left = length;
+
+                @Override
+                public int read() throws IOException {
+                    if (left <= 0) {
+                        return -1;
+                    }
+                    left -= 1;
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (left <= 0) {
+                        return -1;
+                    }
+                    int n = super.read(b, off, (int) Math.min(len, left));
+                    if (n > 0) {
+                        left -= n;
+                    }
+                    return n;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Check if the object stored at OFFSET of the pack is a delta. */
+    private boolean isDeltaAt(long offset) {
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(offset);
+            return in.readInt() == DELTA_MAGIC;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Get the ids of all the objects in this pack, in sorted order.
+     */
+    List<String> ids() {
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(idAt(i));
+        }
+        return result;
+    }
+
+    private String idAt(int entry) {
+        byte[] raw = new byte[ID_BYTES];
+        int base = HEADER_SIZE + entry * ENTRY_SIZE;
+        for (int i = 0; i < ID_BYTES; i++) {
+            raw[i] = idx.get(base + i);
+        }
+        return Utils.toHex(raw);
+    }
+
+    /**
+     * Append the given loose object files to the end of the pack and
+     * rewrite the index.  Objects already in the pack are skipped.
+     * A blob with a suggested base that is in the pack, or appended before
+     * it, is stored as a delta against the base if that is smaller, unless
+     * the chain of deltas would grow longer than MAXDEPTH.
+     * The pack is synced to disk before the new index replaces the old one,
+     * so a crash never leaves an index pointing past the end of the pack.
+     * @param looseFiles the object files, each named by its object id.
+     * @param deltaBases the ids of the suggested bases, by blob id.
+     * @param maxDepth the longest chain of deltas, or 0 for no deltas.
+     * @return the number of objects appended.
+     */
+    int append(List<File> looseFiles, Map<String, String> deltaBases, int maxDepth) {
+        TreeMap<String, long[]> entries = entries();
+        /* The lengths of the chains of deltas, by id, as far as known. */
+        Map<String, Integer> depths = new HashMap<>();
+        int appended = 0;
+        packFile.getParentFile().mkdirs();
+        appending = entries;
+        try (FileOutputStream out = new FileOutputStream(packFile, true)) {
+            long offset = out.getChannel().size();
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            for (File file : looseFiles) {
+                String id = file.getName();
+                if (entries.containsKey(id)) {
+                    continue;
+                }
+                byte[] content = Utils.readContents(file);
+                String baseId = deltaBases.get(id);
+                if (baseId != null && entries.containsKey(baseId) && maxDepth > 0) {
+                    /* The base may still be in the buffer. */
+                    buffered.flush();
+                }
+                if (baseId != null && entries.containsKey(baseId) && maxDepth > 0
+                        && depth(baseId, depths) < maxDepth) {
+                    byte[] delta = makeDelta(baseId, content);
+                    if (delta != null && delta.length < content.length) {
+                        content = delta;
+                        depths.put(id, depth(baseId, depths) + 1);
+                    }
+                }
+                buffered.write(content);
+                entries.put(id, new long[]{offset, content.length});
+                offset += content.length;
+                appended += 1;
+            }
+            buffered.flush();
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            appending = null;
+        }
+        writeIndex(entries);
+        return appended;
+    }
+
+    /**
+     * Append the objects of a transfer pack, which Transfer wrote, to the end
+     * of this pack and rewrite the index.  Objects already in this objects
+     * directory are skipped.  The objects are streamed, one at a time.
+     * @param in the transfer pack.
+     * @return the number of objects appended.
+     */
+    int receive(DataInputStream in) throws IOException {
+        TreeMap<String, long[]> entries = entries();
+        int appended = 0;
+        packFile.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(packFile, true)) {
+            long offset = out.getChannel().size();
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            byte[] raw = new byte[ID_BYTES];
+            while (Transfer.readObjectHead(in, raw)) {
+                String id = Utils.toHex(raw);
+                byte[] object = new byte[in.readInt()];
+                in.readFully(object);
+                if (entries.containsKey(id) || hasLoose(id)) {
+                    continue;
+                }
+                buffered.write(object);
+                entries.put(id, new long[]{offset, object.length});
+                offset += object.length;
+                appended += 1;
+            }
+            buffered.flush();
+            out.getFD().sync();
+        }
+        if (appended > 0) {
+            writeIndex(entries);
+        }
+        return appended;
+    }
+
+    /** Get the offsets and the lengths of all the objects of the index, by id. */
+    private TreeMap<String, long[]> entries() {
+        TreeMap<String, long[]> entries = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            int base = HEADER_SIZE + i * ENTRY_SIZE;
+            entries.put(idAt(i), new long[]{idx.getLong(base + ID_BYTES),
+                idx.getInt(base + ID_BYTES + 8)});
+        }
+        return entries;
+    }
+
+    /**
+     * Get the length of the chain of deltas of an object of the pack.
+     * @param id the id of the object.
+     * @param depths the lengths known so far, by id, which are added to.
+     * @return 0 for an object stored whole.
+     */
+    private int depth(String id, Map<String, Integer> depths) {
+        Integer known = depths.get(id);
+        if (known != null) {
+            return known;
+        }
+        byte[] stored = readStored(id);
+        int depth = isDelta(stored) ? depth(deltaBase(stored), depths) + 1 : 0;
+        depths.put(id, depth);
+        return depth;
+    }
+
+    /**
+     * Make the bytes to store for a blob as a delta against a base.
+     * @param baseId the id of the base, which is in the pack.
+     * @param object the bytes of the blob object.
+     * @return the delta, or null if the blob or the base is not in one piece.
+     */
+    private byte[] makeDelta(String baseId, byte[] object) {
+        byte[] target = Blobs.inflate(object);
+        byte[] base = target == null ? null : content(baseId);
+        if (base == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(DELTA_MAGIC);
+            out.write(Utils.fromHex(baseId));
+            try (DeflaterOutputStream deflated = new DeflaterOutputStream(out)) {
+                deflated.write(Delta.encode(base, target));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Write ENTRIES as the new index, replacing the old one atomically. */
+    private void writeIndex(TreeMap<String, long[]> entries) {
+        File tmp = Utils.join(idxFile.getParentFile(), "pack.idx.tmp");
+        writeIndexFile(entries, tmp);
+        try {
+            Files.move(tmp.toPath(), idxFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        loadIndex();
+    }
+
+    /** Write ENTRIES as an index into FILE and sync it. */
+    private static void writeIndexFile(TreeMap<String, long[]> entries, File file) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + entries.size() * ENTRY_SIZE);
+        buffer.putInt(IDX_MAGIC);
+        buffer.putInt(IDX_VERSION);
+        int[] fanout = new int[256];
+        for (String id : entries.keySet()) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        int total = 0;
+        for (int i = 0; i < 256; i++) {
+            total += fanout[i];
+            buffer.putInt(total);
+        }
+        for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+            buffer.put(Utils.fromHex(entry.getKey()));
+            buffer.putLong(entry.getValue()[0]);
+            buffer.putInt((int) entry.getValue()[1]);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(buffer.array());
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Rewrite the pack with only some of its objects, as they are stored.
+     * A delta whose base is kept stays valid.  The new pack and index are
+     * written and synced beside the old ones; the index is then renamed to
+     * pack.idx.ready, which tells that both are complete, and both are moved
+     * over the old ones.  A process that finds pack.idx.ready finishes the move.
+     * @param keep the positions in the index of the objects to keep.
+     * @return the number of bytes by which the pack shrank.
+     */
+    long retain(BitSet keep) {
+        if (keep.cardinality() == count) {
+            return 0;
+        }
+        File packDir = packFile.getParentFile();
+        File newPack = Utils.join(packDir, "pack.pack.gc");
+        File newIdx = Utils.join(packDir, "pack.idx.gc");
+        long oldSize = packFile.length();
+        TreeMap<String, long[]> entries = new TreeMap<>();
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r");
+             FileOutputStream out = new FileOutputStream(newPack)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            long offset = 0;
+            for (int i = keep.nextSetBit(0); i >= 0 && i < count; i = keep.nextSetBit(i + 1)) {
+                int base = HEADER_SIZE + i * ENTRY_SIZE;
+                byte[] stored = new byte[idx.getInt(base + ID_BYTES + 8)];
+                in.seek(idx.getLong(base + ID_BYTES));
+                in.readFully(stored);
+                buffered.write(stored);
+                entries.put(idAt(i), new long[]{offset, stored.length});
+                offset += stored.length;
+            }
+            buffered.flush();
+            out.getFD().sync();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeIndexFile(entries, newIdx);
+        try {
+            Files.move(newIdx.toPath(), Utils.join(packDir, "pack.idx.ready").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        finishRewrite();
+        loadIndex();
+        return oldSize - packFile.length();
+    }
+
+    /** Move a rewritten pack and index over the old ones if a rewrite was
+     *  interrupted after both were complete, and drop the half-written ones otherwise. */
+    private void finishRewrite() {
+        File packDir = packFile.getParentFile();
+        File newPack = Utils.join(packDir, "pack.pack.gc");
+        File ready = Utils.join(packDir, "pack.idx.ready");
+        try {
+            if (ready.isFile()) {
+                if (newPack.isFile()) {
+                    Files.move(newPack.toPath(), packFile.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(ready.toPath(), idxFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                newPack.delete();
+                Utils.join(packDir, "pack.idx.gc").delete();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Get the number of objects in this pack. */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get the position of an object in the index of this pack.
+     * @param id the full object id.
+     * @return the position, or -1 if the object is not in this pack.
+     */
+    int position(String id) {
+        return find(id);
+    }
+
+    /**
+     * Get the base of the object at a position of the index, if it is a delta.
+     * @param position the position of the object.
+     * @return the id of the base, or null if the object is stored whole.
+     */
+    String deltaBaseAt(int position) {
+        int base = HEADER_SIZE + position * ENTRY_SIZE;
+        if (idx.getInt(base + ID_BYTES + 8) < DELTA_HEADER_SIZE) {
+            return null;
+        }
+        byte[] head = new byte[DELTA_HEADER_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(idx.getLong(base + ID_BYTES));
+            in.readFully(head);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return isDelta(head) ? deltaBase(head) : null;
+    }
+
+    /**
+     * Read the bytes of an object from the pack of the given objects directory.
+     * @param objectsDir the objects directory, local or remote.
+     * @param id the full object id.
+     * @return the bytes of the object, or null if it is not packed.
+     */
+    static byte[] read(File objectsDir, String id) {
+        return of(objectsDir).read(id);
+    }
+
+    /**
+     * Check if an object exists in the given objects directory,
+     * either as a loose file or inside the pack.
+     * @param objectsDir the objects directory, local or remote.
+     * @param id the full object id.
+     */
+    static boolean exists(File objectsDir, String id) {
+        Pack pack = of(objectsDir);
+        return pack.contains(id) || pack.hasLoose(id);
+    }
+
+    /**
+     * Record that a loose object was written into the given objects
+     * directory, so that exists finds it.
+     * @param objectsDir the objects directory, local or remote.
+     * @param id the full object id.
+     */
+    static void added(File objectsDir, String id) {
+        of(objectsDir).addLoose(id);
+    }
+
+    /** Check if the object with the given id is a loose file of the objects directory. */
+    private synchronized boolean hasLoose(String id) {
+        if (!isObjectId(id)) {
+            return Utils.join(objectsDir, id).isFile();
+        }
+        if (loose == null) {
+            /* The stamp is taken first, so that a file added while listing makes it stale. */
+            looseStamp = FileStamp.of(objectsDir);
+            String[] names = objectsDir.list();
+            names = names == null ? new String[0] : names;
+            loose = new BloomFilter(Math.max(2 * names.length, LOOSE_FILTER_MIN_IDS));
+            for (String name : names) {
+                if (isObjectId(name)) {
+                    loose.add(name);
+                }
+            }
+        }
+        return loose.mightContain(id) && Utils.join(objectsDir, id).isFile();
+    }
+
+    /** Add the id of a loose object just written to the filter, if there is one yet. */
+    private synchronized void addLoose(String id) {
+        if (loose != null) {
+            loose.add(id);
+        }
+    }
+
+    /** Check if NAME looks like a full object id. */
+    static boolean isObjectId(String name) {
+        if (name.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
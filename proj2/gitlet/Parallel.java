@@ -0,0 +1,86 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs independent pieces of I/O work, such as hashing or writing files,
+ * on a shared pool with one daemon thread per processor.
+ *  @Author Zhang, Xiaochen
+ */
+class Parallel {
+    /** The number of threads of the pool. */
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+    /** The pool, made on first use. */
+    private static ExecutorService pool;
+
+    /** Get the pool, making it on first use. */
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(THREADS, task -> {
+                Thread thread = new Thread(task, "gitlet-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Apply FUNCTION to every item, in parallel when there are several.
+     * Every item is processed even if some fail; then the first failure,
+     * in the order of the items, is thrown.
+     * @param items the items.
+     * @param function what to compute for an item.
+     * @return the results, in the order of the items.
+     */
+    static <T, R> List<R> map(List<T> items, Function<T, R> function) {
+        List<R> results = new ArrayList<>(items.size());
+        if (items.size() <= 1 || THREADS <= 1) {
+            for (T item : items) {
+                results.add(function.apply(item));
+            }
+            return results;
+        }
+        List<Future<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(pool().submit(() -> function.apply(item)));
+        }
+        RuntimeException failure = null;
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException excp) {
+                results.add(null);
+                if (failure == null) {
+                    Throwable cause = excp.getCause();
+                    failure = cause instanceof RuntimeException ? (RuntimeException) cause
+                            : new IllegalArgumentException(cause.getMessage(), cause);
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IllegalArgumentException("interrupted while waiting for a worker");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Apply ACTION to every item, in parallel when there are several,
+     * with the same handling of failures as map.
+     * @param items the items.
+     * @param action what to do with an item.
+     */
+    static <T> void forEach(List<T> items, Consumer<T> action) {
+        map(items, item -> {
+            action.accept(item);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,295 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Writes the changes between two versions of a set of files as a unified
+ * diff, as diff prints them.  Each changed file gets a header and hunks of
+ * changed lines with CONTEXT unchanged lines around them, see Diff; a binary
+ * file is only said to differ.
+ * Files deleted on the old side and added on the new side are paired up as
+ * renames: first those with the same blob, then those with similar content.
+ * Similar content is told by fingerprints: the sorted hashes of the lines of
+ * a file, of only a sample of them for large files, of which at least
+ * RENAME_SIMILARITY percent must be shared.  Inexact detection is skipped
+ * when there are more than RENAME_LIMIT pairs to score.
+ *  @Author Zhang, Xiaochen
+ */
+class Patch {
+    /** The number of unchanged lines around each hunk. */
+    private static final int CONTEXT = 3;
+    /** The least similarity of a rename, in percent. */
+    private static final int RENAME_SIMILARITY = 50;
+    /** The largest number of deleted and added file pairs scored for renames. */
+    private static final int RENAME_LIMIT = 100000;
+    /** The number of line hashes above which only a sample is kept in a fingerprint. */
+    private static final int FINGERPRINT_LINES = 1024;
+
+    /** Where the diff is written. */
+    private final OutputStream out;
+    /** Reads the content of a file of each side, given its path and its blob id. */
+    private final Function<String[], byte[]> oldContent;
+    private final Function<String[], byte[]> newContent;
+
+    /**
+     * Make a writer of diffs.
+     * @param out where the diff is written.
+     * @param oldContent reads an old file, given its path and blob id.
+     * @param newContent reads a new file, given its path and blob id.
+     */
+    Patch(OutputStream out, Function<String[], byte[]> oldContent, Function<String[], byte[]> newContent) {
+        this.out = out;
+        this.oldContent = oldContent;
+        this.newContent = newContent;
+    }
+
+    /**
+     * Write the diff of the changed files, in the order of their paths.
+     * @param changes the old and the new blob id of each changed file,
+     *                null where it is missing, by path.
+     */
+    void write(SortedMap<String, String[]> changes) throws IOException {
+        /* The old path of each file renamed, by its new path. */
+        Map<String, String> renames = findRenames(changes);
+        Set<String> renamedFrom = new HashSet<>(renames.values());
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            String path = change.getKey();
+            if (renamedFrom.contains(path)) {
+                continue;
+            }
+            String oldPath = renames.getOrDefault(path, path);
+            String oldId = renames.containsKey(path) ? changes.get(oldPath)[0] : change.getValue()[0];
+            writeFile(oldPath, oldId, path, change.getValue()[1]);
+        }
+    }
+
+    /** Write the diff of one file, OLDID at OLDPATH before and NEWID at NEWPATH after. */
+    private void writeFile(String oldPath, String oldId, String newPath, String newId) throws IOException {
+        print("diff --git a/%s b/%s\n", oldPath, newPath);
+        byte[] before = oldId == null ? new byte[0] : oldContent.apply(new String[]{oldPath, oldId});
+        byte[] after = newId == null ? new byte[0] : newContent.apply(new String[]{newPath, newId});
+        if (oldId == null) {
+            print("new file\n");
+        } else if (newId == null) {
+            print("deleted file\n");
+        } else if (!oldPath.equals(newPath)) {
+            print("similarity index %d%%\nrename from %s\nrename to %s\n",
+                oldId.equals(newId) ? 100 : similarity(fingerprint(before), fingerprint(after)),
+                oldPath, newPath);
+            if (oldId.equals(newId)) {
+                return;
+            }
+        }
+        String from = oldId == null ? "/dev/null" : "a/" + oldPath;
+        String to = newId == null ? "/dev/null" : "b/" + newPath;
+        if (Diff.isBinary(before) || Diff.isBinary(after)) {
+            print("Binary files %s and %s differ\n", from, to);
+            return;
+        }
+        print("--- %s\n+++ %s\n", from, to);
+        writeHunks(before, after);
+    }
+
+    /** Write the hunks of the lines that changed from BEFORE to AFTER. */
+    private void writeHunks(byte[] before, byte[] after) throws IOException {
+        int[][] starts = {Diff.lineStarts(before), Diff.lineStarts(after)};
+        byte[][] contents = {before, after};
+        int[][] lines = Diff.number(contents, starts);
+        int[] match = Diff.match(lines[0], lines[1]);
+        int aCount = lines[0].length;
+        int bCount = lines[1].length;
+        /* The changed ranges, as the first and the end line on each side. */
+        List<int[]> changed = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < aCount || j < bCount) {
+            if (i < aCount && match[i] == j) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int nextI = i;
+            while (nextI < aCount && match[nextI] < 0) {
+                nextI += 1;
+            }
+            int nextJ = nextI < aCount ? match[nextI] : bCount;
+            changed.add(new int[]{i, nextI, j, nextJ});
+            i = nextI;
+            j = nextJ;
+        }
+        for (int first = 0; first < changed.size();) {
+            /* Join the changes whose contexts touch into one hunk. */
+            int last = first;
+            while (last + 1 < changed.size()
+                    && changed.get(last + 1)[0] - changed.get(last)[1] <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int aStart = Math.max(0, changed.get(first)[0] - CONTEXT);
+            int aEnd = Math.min(aCount, changed.get(last)[1] + CONTEXT);
+            int bStart = changed.get(first)[2] - (changed.get(first)[0] - aStart);
+            int bEnd = changed.get(last)[3] + (aEnd - changed.get(last)[1]);
+            print("@@ -%s +%s @@\n", range(aStart, aEnd), range(bStart, bEnd));
+            int a = aStart;
+            for (int c = first; c <= last; c++) {
+                int[] change = changed.get(c);
+                writeLines(' ', before, starts[0], a, change[0]);
+                writeLines('-', before, starts[0], change[0], change[1]);
+                writeLines('+', after, starts[1], change[2], change[3]);
+                a = change[1];
+            }
+            writeLines(' ', before, starts[0], a, aEnd);
+            first = last + 1;
+        }
+    }
+
+    /** Get the range of lines FROM to TO as a hunk header shows it. */
+    private static String range(int from, int to) {
+        int count = to - from;
+        if (count == 1) {
+            return Integer.toString(from + 1);
+        }
+        return (count == 0 ? from : from + 1) + "," + count;
+    }
+
+    /** Write lines FROM to TO of CONTENT, each after PREFIX. */
+    private void writeLines(char prefix, byte[] content, int[] starts, int from, int to) throws IOException {
+        for (int line = from; line < to; line++) {
+            out.write(prefix);
+            int end = starts[line + 1];
+            out.write(content, starts[line], end - starts[line]);
+            if (content[end - 1] != '\n') {
+                print("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /**
+     * Pair deleted files with added ones: first those with the same blob,
+     * then, best first, those with similar fingerprints.
+     * @param changes the changed files.
+     * @return the old path of each renamed file, by its new path.
+     */
+    private Map<String, String> findRenames(SortedMap<String, String[]> changes) {
+        Map<String, String> renames = new HashMap<>();
+        List<String> deleted = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        for (Map.Entry<String, String[]> change : changes.entrySet()) {
+            if (change.getValue()[1] == null) {
+                deleted.add(change.getKey());
+            } else if (change.getValue()[0] == null) {
+                added.add(change.getKey());
+            }
+        }
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+        /* Exact renames, by blob id. */
+        Map<String, Deque<String>> deletedByBlob = new HashMap<>();
+        for (String path : deleted) {
+            deletedByBlob.computeIfAbsent(changes.get(path)[0], id -> new ArrayDeque<>()).add(path);
+        }
+        for (Iterator<String> it = added.iterator(); it.hasNext();) {
+            String path = it.next();
+            Deque<String> sources = deletedByBlob.get(changes.get(path)[1]);
+            if (sources != null && !sources.isEmpty()) {
+                String source = sources.poll();
+                renames.put(path, source);
+                deleted.remove(source);
+                it.remove();
+            }
+        }
+        if (deleted.isEmpty() || added.isEmpty() || (long) deleted.size() * added.size() > RENAME_LIMIT) {
+            return renames;
+        }
+        /* Renames by similar content, the most similar pairs first. */
+        List<int[]> fingerprintsOld = new ArrayList<>();
+        for (String path : deleted) {
+            fingerprintsOld.add(fingerprint(oldContent.apply(new String[]{path, changes.get(path)[0]})));
+        }
+        List<int[]> fingerprintsNew = new ArrayList<>();
+        for (String path : added) {
+            fingerprintsNew.add(fingerprint(newContent.apply(new String[]{path, changes.get(path)[1]})));
+        }
+        List<int[]> pairs = new ArrayList<>();
+        for (int d = 0; d < deleted.size(); d++) {
+            for (int a = 0; a < added.size(); a++) {
+                int score = similarity(fingerprintsOld.get(d), fingerprintsNew.get(a));
+                if (score >= RENAME_SIMILARITY) {
+                    pairs.add(new int[]{score, d, a});
+                }
+            }
+        }
+        pairs.sort((x, y) -> Integer.compare(y[0], x[0]));
+        boolean[] usedOld = new boolean[deleted.size()];
+        boolean[] usedNew = new boolean[added.size()];
+        for (int[] pair : pairs) {
+            if (!usedOld[pair[1]] && !usedNew[pair[2]]) {
+                usedOld[pair[1]] = true;
+                usedNew[pair[2]] = true;
+                renames.put(added.get(pair[2]), deleted.get(pair[1]));
+            }
+        }
+        return renames;
+    }
+
+    /**
+     * Make the fingerprint of a file: the sorted hashes of its lines, or of a
+     * sample of about FINGERPRINT_LINES of them chosen by their hash, so that
+     * the same lines are sampled in any file.  A binary file has none.
+     */
+    private static int[] fingerprint(byte[] content) {
+        if (Diff.isBinary(content)) {
+            return new int[0];
+        }
+        int[] starts = Diff.lineStarts(content);
+        int lineCount = starts.length - 1;
+        int sampleMask = Integer.highestOneBit(Math.max(1, lineCount / FINGERPRINT_LINES)) - 1;
+        int[] hashes = new int[lineCount];
+        int count = 0;
+        for (int i = 0; i < lineCount; i++) {
+            int hash = 1;
+            for (int at = starts[i]; at < starts[i + 1]; at++) {
+                hash = 31 * hash + content[at];
+            }
+            hash ^= hash >>> 16;
+            if ((hash & sampleMask) == 0) {
+                hashes[count++] = hash;
+            }
+        }
+        int[] fingerprint = Arrays.copyOf(hashes, count);
+        Arrays.sort(fingerprint);
+        return fingerprint;
+    }
+
+    /** Get the percentage of the larger of two fingerprints that the other shares. */
+    private static int similarity(int[] a, int[] b) {
+        if (a.length == 0 && b.length == 0) {
+            /* Binary files, or empty ones, which only rename exactly. */
+            return 0;
+        }
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared += 1;
+                i += 1;
+                j += 1;
+            } else if (a[i] < b[j]) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+        }
+        return (int) (100L * shared / Math.max(a.length, b.length));
+    }
+
+    /** Write a header line made from FORMAT and ARGS. */
+    private void print(String format, Object... args) throws IOException {
+        out.write(String.format(format, args).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -3,7 +3,10 @@ package gitlet;
 import java.io.*;
 import java.util.List;
 
-public class Remote implements Serializable {
+public class Remote implements Encodable {
+    /** The serialVersionUID of the remotes that older versions of gitlet
+     *  Java-serialized, so that they are still read. */
+    private static final long serialVersionUID = 9056313188397531215L;
     /** The remote directory of the remote. */
     private File REMOTE_DIR;
     /** The remote name of the remote. */
@@ -27,4 +30,21 @@ public class Remote implements Serializable {
         return Utils.plainFilenamesIn(REMOTE_DIR);
     }
 
+    @Override
+    public byte codecTag() {
+        return Codec.REMOTE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Codec.writeString(out, remoteName);
+        Codec.writeString(out, REMOTE_DIR.getPath());
+    }
+
+    /** Read a remote written by encode. */
+    static Remote decode(DataInputStream in) throws IOException {
+        String remoteName = Codec.readString(in);
+        return new Remote(remoteName, Codec.readString(in));
+    }
+
 }
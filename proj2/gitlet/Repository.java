@@ -1,6 +1,9 @@
 package gitlet;
 
 import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.*;
 import static gitlet.Utils.*;
 
@@ -13,43 +16,50 @@ public class Repository {
     public static final File CWD = new File(System.getProperty("user.dir"));
     /** The .gitlet directory. */
     public static final File GITLET_DIR = join(CWD, ".gitlet");
-    /** The gitlet file. */
-    public static final File GITLET_FILE = join(GITLET_DIR, "gitlet");
     /** The objects' directory. */
     public static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
-    /** The commits' directory. */
-    public static final File COMMITS_DIR = join(OBJECTS_DIR, "commits");
     /** The refs' directory. */
     public static final File REFS_DIR = join(GITLET_DIR, "refs");
     /** The heads directory. */
     public static final File HEADS_DIR = join(REFS_DIR, "heads");
     /** The HEAD file. */
     public static final File HEAD_FILE = join(GITLET_DIR, "HEAD");
-    /** The add stage directory. */
-    public static final File ADD_STAGE_DIR = join(GITLET_DIR, "addstage");
-    /** The remove stage directory. */
-    public static final File REMOVE_STAGE_DIR = join(GITLET_DIR, "removestage");
     /** The remote directory. */
     public static final File REMOTE_DIR = join(GITLET_DIR, "remotes");
+    /** True if the environment variable GITLET_VERBOSE is set, to print what commands did. */
+    private static final boolean VERBOSE = System.getenv("GITLET_VERBOSE") != null;
+    /** The size of the buffer of the writer of log and global-log, 64 KiB. */
+    private static final int LOG_BUFFER_SIZE = 64 * 1024;
 
     /**
      * The structure of the .gitlet directory:
      *   .gitlet
-     *      |--gitlet.file
+     *      |--commit-log ; metadata of all the commits, for global-log, see CommitLog
+     *      |--messages ; ids of the commits by message, for find
+     *      |--commit-graph ; parents and generation numbers, see CommitGraph
+     *      |--commit-bitmaps ; ancestors of some commits, written by repack and gc
+     *      |--commit-ids ; sorted commit ids for abbreviations, see CommitIndex
      *      |--objects
-     *      |     |--commits ; patch for global-log :(
-     *      |     |--commit and blob
+     *      |     |--commit, tree and blob ; loose objects, see Commit and Tree
+     *      |     |--pack
+     *      |          |--pack.pack ; packed objects, see gitRepack; gc drops the unreachable ones
+     *      |          |--pack.idx
+     *      |          |--incoming.pack ; objects sent by fetch or push, see Transfer
      *      |--refs
      *      |    |--heads
      *      |         |--master
      *      |         |--branch1
      *      |         |--...
      *      |--HEAD.file
-     *      |--addstage
-     *      |--removestage
+     *      |--index ; the staging area and the stat cache, see Staging
      *      |--remotes
-     * In objects directory, files' name: files' hash
-     * In add/remove stage directory, files' name: original files
+     *      |--journal ; the write-ahead journal of the commands, see Journal
+     *      |--lock ; held by the command running, see Daemon
+     *      |--daemon.sock ; the socket of the daemon, while one runs
+     * In objects directory, files' name: files' hash; objects not found there are in the pack
+     * A commit names the tree of the working directory, which names the blobs of
+     * its files and the trees of its subdirectories
+     * Blobs are stored Deflate-compressed, see Blobs
      * In refs/heads directory, files' name: branches' name, files' content: commits' hash
      */
     public static void gitInit() {
@@ -59,12 +69,9 @@ public class Repository {
         }
         /* Create the .gitlet directory and its subdirectories. */
         GITLET_DIR.mkdir();
-        ADD_STAGE_DIR.mkdir();
-        REMOVE_STAGE_DIR.mkdir();
         REFS_DIR.mkdir();
         HEADS_DIR.mkdir();
         OBJECTS_DIR.mkdir();
-        COMMITS_DIR.mkdir();
         REMOTE_DIR.mkdir();
         /* Create the master branch and set the HEAD to it. */
         Commit initialCommit = new Commit();
@@ -76,133 +83,181 @@ public class Repository {
         File masterBranch = join(HEADS_DIR, "master");
         writeContents(masterBranch, initialCommit.getHashCode());
 
-        /* Save the Gitlet object. */
-        Gitlet gitlet = new Gitlet();
-        gitlet.addCommit(initialCommit);
-        gitlet.save();
+        /* Create the empty staging area. */
+        Staging.load().save();
     }
 
-    public static void gitAdd(String fileName) {
+    /**
+     * Stage files for addition.  Each operand is a file name, a directory,
+     * which stands for all the files under it, or a glob pattern, such as
+     * *.txt, matched against the paths of the files of the working
+     * directory.  Nothing is staged if an operand matches no file.
+     * @param operands the file names and patterns.
+     */
+    public static void gitAdd(String... operands) {
         // NOTE: In objects directory, the filename is the SHA-1 hash of the file,
         // but the tree's key is the filename to the value of the SHA-1 hash.
 
-        /* Check if the file exists in the current directory. */
-        String headCommitHash = getHeadCommitHash();
-        Commit headCommit = Utils.readObject(join(OBJECTS_DIR, headCommitHash), Commit.class);
-        File file = new File(fileName);
-        /* Check if the file exists in the current directory. */
-        if (!file.exists()) {
-            message("File does not exist.");
-            return;
+        /* Check if the files exist in the current directory. */
+        List<String> fileNames = expandOperands(operands);
+        Commit headCommit = Commit.load(getHeadCommitHash());
+        Staging staging = Staging.load();
+
+        /* The files tracked by the head commit are hashed first, in parallel. */
+        List<String> tracked = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (headCommit.getBlobs().containsKey(fileName)) {
+                tracked.add(fileName);
+            }
         }
-        /* If so, check if the file is the same as the head commit. */
-        if (headCommit.getBlobs().containsKey(fileName)) {
-            byte[] content = Utils.readContents(file);
-            String blobId = Utils.sha1(content);
-            /* If so, do not add it to the add stage. */
-            if (headCommit.getBlobs().get(fileName).equals(blobId)) {
-                /* If this file is already in add stage, delete it. */
-                File addStageFile = join(ADD_STAGE_DIR, fileName);
-                if (addStageFile.exists()) {
-                    addStageFile.delete();
-                }
+        Map<String, String> hashes = staging.hashFiles(tracked, CWD);
+        List<String> changed = new ArrayList<>();
+        for (String fileName : fileNames) {
+            String headId = headCommit.getBlobs().get(fileName);
+            /* If the file is the same as in the head commit, only unstage it. */
+            if (headId != null && headId.equals(hashes.get(fileName))) {
+                staging.unstage(fileName, headId);
+            } else {
+                changed.add(fileName);
+            }
+        }
+
+        /* Save the blobs of the other files in parallel and stage their blob ids.
+         * A file whose blob id is known already, such as one staged before and
+         * not changed since, is not saved again if its blob exists. */
+        List<String> blobIds = Parallel.map(changed, fileName -> {
+            File file = join(CWD, fileName);
+            String blobId = hashes.containsKey(fileName) ? hashes.get(fileName)
+                : staging.cachedHash(fileName, file);
+            return blobId != null && Pack.exists(OBJECTS_DIR, blobId) ? blobId : Blobs.saveBlob(file);
+        });
+        for (int i = 0; i < changed.size(); i++) {
+            staging.stageAdd(changed.get(i), blobIds.get(i));
+            staging.remember(changed.get(i), blobIds.get(i), join(CWD, changed.get(i)));
+        }
+        staging.save();
+    }
 
-                /* If this file is already in remove stage, delete it. */
-                File removeStageFile = join(REMOVE_STAGE_DIR, fileName);
-                if (removeStageFile.exists()) {
-                    removeStageFile.delete();
+    /**
+     * Expand the operands of add into file names.  An operand with a glob
+     * character stands for the files of the working directory it matches,
+     * and a directory for the files under it.
+     * Exits with an error if an operand matches no file.
+     * @param operands the file names and patterns.
+     * @return the file names, without repeats.
+     */
+    private static List<String> expandOperands(String[] operands) {
+        Set<String> fileNames = new LinkedHashSet<>();
+        List<String> workingFiles = null;
+        for (String operand : operands) {
+            boolean found = false;
+            if (operand.matches(".*[*?\\[{].*")) {
+                if (workingFiles == null) {
+                    workingFiles = WorkingTree.listFiles();
+                }
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + operand);
+                for (String file : workingFiles) {
+                    if (matcher.matches(Paths.get(file))) {
+                        fileNames.add(file);
+                        found = true;
+                    }
+                }
+            } else if (join(CWD, operand).isFile()) {
+                fileNames.add(toPath(operand));
+                found = true;
+            } else if (join(CWD, operand).isDirectory()) {
+                if (workingFiles == null) {
+                    workingFiles = WorkingTree.listFiles();
                 }
-                return;
+                String dir = toPath(operand);
+                String prefix = dir.isEmpty() ? "" : dir + Tree.DIR_SUFFIX;
+                for (String file : workingFiles) {
+                    if (file.startsWith(prefix)) {
+                        fileNames.add(file);
+                        found = true;
+                    }
+                }
+            }
+            if (!found) {
+                message("File does not exist.");
+                Main.exit(0);
             }
         }
+        return new ArrayList<>(fileNames);
+    }
 
-        /* If the file is not the same as the head commit, add it to the add stage. */
-        File addStageFile = join(ADD_STAGE_DIR, fileName);
-        byte[] content = Utils.readContents(file);
-        Utils.writeContents(addStageFile, content);
+    /**
+     * Get the path of a working file as the trees of commits name it,
+     * relative to the working directory with "/" between names.
+     * @param operand the file name given on the command line.
+     */
+    private static String toPath(String operand) {
+        String path = Paths.get(operand).normalize().toString();
+        return path.replace(File.separator, Tree.DIR_SUFFIX);
     }
 
     public static void gitCommit(String message) {
         /* Check if the add stage is empty. */
-        if (plainFilenamesIn(ADD_STAGE_DIR).isEmpty()
-                && Utils.plainFilenamesIn(REMOVE_STAGE_DIR).isEmpty()) {
+        Staging staging = Staging.load();
+        if (staging.isClean()) {
             message("No changes added to the commit.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Check if the message is empty. */
         if (message.isEmpty()) {
             message("Please enter a commit message.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Get the commit id of the head commit. */
         String currentBranch = Utils.readObject(HEAD_FILE, Head.class).getBranchName();
         String headCommitHash = Utils.readContentsAsString(join(HEADS_DIR, currentBranch));
-        Commit newCommit = new Commit(message, headCommitHash);
+        Commit newCommit = new Commit(message, headCommitHash, staging);
         newCommit.saveCommit();
-
-        /* Update the object directory. */
-        for (String file : plainFilenamesIn(ADD_STAGE_DIR)) {
-            File addStageFile = join(ADD_STAGE_DIR, file);
-            byte[] content = Utils.readContents(addStageFile);
-            Blobs newBlob = new Blobs(content);
-            newBlob.saveBlob();
-        }
+        /* The blobs of the staged files were saved by gitAdd already. */
 
         /* Update the head pointer to the new commit. */
         Utils.writeContents(join(HEADS_DIR, currentBranch), newCommit.getHashCode());
 
-        /* Update the gitlet file. */
-        Gitlet gitlet = Gitlet.load();
-        gitlet.addCommit(newCommit);
-        gitlet.save();
-
         /* Clear the add stage and remove stage. */
-        clearStage(ADD_STAGE_DIR);
-        clearStage(REMOVE_STAGE_DIR);
-    }
-
-    /**
-     * Clear the stage directory.
-     * @param stageDir
-     */
-    private static void clearStage(File stageDir) {
-        for (String file : plainFilenamesIn(stageDir)) {
-            join(stageDir, file).delete();
-        }
+        staging.clear(newCommit);
+        staging.save();
     }
 
     public static void gitRm(String fileName) {
+        /* Check if the file is in the head commit. */
+        String headHash = getHeadCommitHash();
+        Commit headCommit = Commit.load(headHash);
+
         /* Check if the file is in the add stage. */
-        File addStageFile = join(ADD_STAGE_DIR, fileName);
-        if (addStageFile.exists()) {
-            addStageFile.delete();
+        Staging staging = Staging.load();
+        if (staging.isStagedForAddition(fileName)) {
+            staging.unstage(fileName, headCommit.getBlobs().get(fileName));
+            staging.save();
             return;
         }
 
-        /* Check if the file is in the head commit. */
-        String headHash = getHeadCommitHash();
-        Commit headCommit = Utils.readObject(join(OBJECTS_DIR, headHash), Commit.class);
-
         /* If the file is not in the head commit, print an error message and exit. */
         if (!headCommit.getBlobs().containsKey(fileName)) {
             message("No reason to remove the file.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* If the file is in the head commit, add it to the remove stage. */
-        File removeStageFile = join(REMOVE_STAGE_DIR, fileName);
-        /* Just create an empty file. */
-        try {
-            removeStageFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        staging.stageRemove(fileName, headCommit.getBlobs().get(fileName));
+        staging.save();
         /* Remove the file from the current directory, if it exists. */
-        File currentFile = Utils.join(CWD, fileName);
-        if (currentFile.exists()) {
-            currentFile.delete();
+        WorkingTree.delete(fileName);
+    }
+
+    /**
+     * Print a message composed from MSG and ARGS, as Utils.message does,
+     * but only in verbose mode.
+     */
+    private static void verbose(String msg, Object... args) {
+        if (VERBOSE) {
+            message(msg, args);
         }
     }
 
@@ -215,39 +270,60 @@ public class Repository {
         return Utils.readContentsAsString(join(HEADS_DIR, headPointer));
     }
 
-    public static void gitLog() {
+    /**
+     * Print the commits along the first parents of the head commit, newest
+     * first.  The commits passed over are walked in the commit graph and not
+     * read, so only the commits printed cost a read.
+     * @param skip the number of commits to pass over first.
+     * @param limit the most commits to print.
+     */
+    public static void gitLog(int skip, int limit) {
         String headCommitHash = getHeadCommitHash();
-        Commit currentCommit = Utils.readObject(join(OBJECTS_DIR, headCommitHash), Commit.class);
-        while (currentCommit != null) {
-            currentCommit.printCommit();
-            currentCommit = currentCommit.getFirstParent();
+        CommitGraph graph = CommitGraph.load(GITLET_DIR);
+        if (!graph.contains(headCommitHash)) {
+            graph.add(Commit.load(headCommitHash));
+        }
+        int position = graph.position(headCommitHash);
+        for (int i = 0; i < skip && position != CommitGraph.NONE; i++) {
+            position = graph.firstParent(position);
         }
+        PrintWriter out = logWriter();
+        for (int i = 0; i < limit && position != CommitGraph.NONE; i++) {
+            Commit.load(graph.id(position)).printCommit(out);
+            position = graph.firstParent(position);
+        }
+        out.flush();
     }
 
     public static void gitGloballog() {
-        for (String commitHash : plainFilenamesIn(COMMITS_DIR)) {
-            Commit commit = Utils.readObject(join(COMMITS_DIR, commitHash), Commit.class);
-            commit.printCommit();
-        }
+        /* The metadata log holds all that is printed, so no commit is read. */
+        PrintWriter out = logWriter();
+        CommitLog.load(GITLET_DIR).forEach(entry ->
+            Commit.printCommit(out, entry.getId(), entry.getTimestamp(), entry.getMessage()));
+        out.flush();
+    }
+
+    /**
+     * Get a buffered writer to standard output for the logs, which the caller
+     * flushes at the end, instead of writing each line through System.out.
+     */
+    private static PrintWriter logWriter() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), LOG_BUFFER_SIZE));
     }
 
     public static void gitFind(String message) {
         /* Check if the message is empty. */
         if (message.isEmpty()) {
             message("Please enter a commit message.");
-            System.exit(0);
+            Main.exit(0);
         }
 
-        int count = 0;
-        for (String commitHash : plainFilenamesIn(COMMITS_DIR)) {
-            Commit commit = Utils.readObject(join(COMMITS_DIR, commitHash), Commit.class);
-            if (commit.getMessage().equals(message)) {
-                System.out.println(commit.getHashCode());
-                count = 1;
-            }
+        List<String> found = CommitLog.load(GITLET_DIR).findByMessage(message);
+        for (String commitHash : found) {
+            System.out.println(commitHash);
         }
         /* If no commit is found, print an error message. */
-        if (count == 0) {
+        if (found.isEmpty()) {
             message("Found no commit with that message.");
         }
     }
@@ -269,52 +345,57 @@ public class Repository {
         }
 
         /* Print the staged area. */
+        Staging staging = Staging.load();
         System.out.println("\n=== Staged Files ===");
-        for (String file : plainFilenamesIn(ADD_STAGE_DIR)) {
+        for (String file : staging.getAdded().keySet()) {
             System.out.println(file);
         }
 
         /* Print the removal area. */
         System.out.println("\n=== Removed Files ===");
-        for (String file : plainFilenamesIn(REMOVE_STAGE_DIR)) {
+        for (String file : staging.getRemoved()) {
             System.out.println(file);
         }
 
         /* Print the modifications area. */
         System.out.println("\n=== Modifications Not Staged For Commit ===");
         /* Print the modified files unstaged for commit and their status. */
-        Commit headCommit = Utils.readObject
-                (join(OBJECTS_DIR, getHeadCommitHash()), Commit.class);
-
-        for (String file : plainFilenamesIn(CWD)) {
-            /* If the file is modified in the working directory, but not staged. */
-            /* This time the blobs have the file name as key, but the hash-value is different. */
+        Commit headCommit = Commit.load(getHeadCommitHash());
+        /* The working directory is listed once. */
+        Set<String> workingFiles = new TreeSet<>(WorkingTree.listFiles());
+        List<String> trackedFiles = new ArrayList<>();
+        for (String file : workingFiles) {
             if (headCommit.getBlobs().containsKey(file)) {
-                byte[] content = Utils.readContents(join(CWD, file));
-                String blobId = Utils.sha1(content);
-                if (!headCommit.getBlobs().get(file).equals(blobId)) {
-                    System.out.println(file + " (modified)");
-                }
+                trackedFiles.add(file);
+            }
+        }
+        /* Unchanged files are recognized by their size and modification time;
+         * the others are hashed in parallel. */
+        Map<String, String> hashes = staging.hashFiles(trackedFiles, CWD);
+        for (Map.Entry<String, String> file : hashes.entrySet()) {
+            /* If the file is modified in the working directory, but not staged. */
+            if (!headCommit.getBlobs().get(file.getKey()).equals(file.getValue())) {
+                System.out.println(file.getKey() + " (modified)");
             }
         }
         /* If the file is deleted in the working directory, but not staged. */
         for (String file : headCommit.getBlobs().keySet()) {
-            if (!Utils.join(CWD, file).exists()
-                    && !plainFilenamesIn(REMOVE_STAGE_DIR).contains(file)) {
+            if (!workingFiles.contains(file) && !staging.isStagedForRemoval(file)) {
                 System.out.println(file + " (deleted)");
             }
         }
 
-
         /* Print the untracked area. */
         System.out.println("\n=== Untracked Files ===");
         /* Print the untracked files. */
-        for (String file : plainFilenamesIn(CWD)) {
+        for (String file : workingFiles) {
             if (!headCommit.getBlobs().containsKey(file)
-                    && !plainFilenamesIn(ADD_STAGE_DIR).contains(file)) {
+                    && !staging.isStagedForAddition(file)) {
                 System.out.println(file);
             }
         }
+        /* Keep the refreshed stat information for the next time. */
+        staging.save();
     }
 
     public static void gitCheckout(String[] args) {
@@ -333,7 +414,7 @@ public class Repository {
             }
             default: {
                 message("Incorrect operands.");
-                System.exit(0);
+                Main.exit(0);
             }
         }
     }
@@ -347,52 +428,47 @@ public class Repository {
         /* Check if the branch exists. */
         if (!plainFilenamesIn(HEADS_DIR).contains(branchName)) {
             message("No such branch exists.");
-            System.exit(0);
+            Main.exit(0);
         }
         /* Check if the branch is the current branch. */
         String currentBranch = Utils.readObject(HEAD_FILE, Head.class).getBranchName();
         if (currentBranch.equals(branchName)) {
             message("No need to checkout the current branch.");
-            System.exit(0);
+            Main.exit(0);
         }
         /*
          * Check if a working file is untracked in the current
          * branch and would be overwritten by the checkout
          */
-        Commit headCommit = Utils.readObject
-                (join(OBJECTS_DIR, getHeadCommitHash()), Commit.class);
-        for (String file : plainFilenamesIn(CWD)) {
-            if (!headCommit.getBlobs().containsKey(file)
-                    && !plainFilenamesIn(ADD_STAGE_DIR).contains(file)) {
-                message("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        }
+        Commit headCommit = Commit.load(getHeadCommitHash());
+        String newHeadCommitHash = Utils.readContentsAsString(join(HEADS_DIR, branchName));
+        Commit newHeadCommit = Commit.load(newHeadCommitHash);
+        Staging staging = Staging.load();
+        checkUntrackedFiles(staging, headCommit);
         /* Update the head pointer to the new branch. */
         Head head = new Head(branchName);
         Utils.writeObject(HEAD_FILE, head);
 
-        /* Update the gitlet file. */
-        Gitlet gitlet = Gitlet.load();
-        gitlet.checkoutBranch(branchName);
-        gitlet.save();
-
         /* Restore the files in the new branch to the current directory. */
-        String newHeadCommitHash = Utils.readContentsAsString(join(HEADS_DIR, branchName));
-        Commit newHeadCommit = Utils.readObject
-                (join(OBJECTS_DIR, newHeadCommitHash), Commit.class);
-        for (String file : plainFilenamesIn(CWD)) {
-            if (!newHeadCommit.getBlobs().containsKey(file)) {
-                Utils.join(CWD, file).delete();
+        verbose("%s", WorkingTree.update(staging, headCommit, newHeadCommit, true));
+        staging.save();
+    }
+
+    /**
+     * Exit with an error if a working file is untracked in the head commit
+     * and not staged for addition, since it may be in the way of the files
+     * of the target commit.
+     * @param staging the staging area.
+     * @param headCommit the current head commit.
+     */
+    private static void checkUntrackedFiles(Staging staging, Commit headCommit) {
+        for (String file : WorkingTree.listFiles()) {
+            if (!headCommit.getBlobs().containsKey(file) && !staging.isStagedForAddition(file)) {
+                message("There is an untracked file in the way; "
+                        + "delete it, or add and commit it first.");
+                Main.exit(0);
             }
         }
-        for (String file : newHeadCommit.getBlobs().keySet()) {
-            File newFile = Utils.join(CWD, file);
-            Blobs blob = Utils.readObject(join(OBJECTS_DIR,
-                    newHeadCommit.getBlobs().get(file)), Blobs.class);
-            Utils.writeContents(newFile, blob.getContent());
-        }
     }
 
     private static void checkOutwiththreeoprands(String[] args) {
@@ -400,60 +476,63 @@ public class Repository {
         /* Check if the operands are correct. */
         if (!args[1].equals("--")) {
             message("Incorrect operands.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         String fileName = args[2];
         String headCommitHash = getHeadCommitHash();
-        Commit headCommit = Utils.readObject(join(OBJECTS_DIR, headCommitHash), Commit.class);
+        Commit headCommit = Commit.load(headCommitHash);
 
         /* Check if the file exists in the head commit. */
         if (!headCommit.getBlobs().containsKey(fileName)) {
             message("File does not exist in that commit.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Restore the file to the current directory. */
         File file = join(CWD, fileName);
         String blobHash = headCommit.getBlobs().get(fileName);
-        Blobs blob = Utils.readObject(join(OBJECTS_DIR, blobHash), Blobs.class);
-        Utils.writeContents(file, blob.getContent());
+        Blobs.restore(blobHash, file);
     }
 
+    /**
+     * Resolve a full or abbreviated commit id with the commit id index.
+     * An abbreviation shared by several commits is an error.
+     * @param uid the full or abbreviated commit id.
+     * @return the full commit id, or null if no commit has it.
+     */
     private static String findIdWithUid(String uid) {
-        for (String commitId : plainFilenamesIn(COMMITS_DIR)) {
-            if (commitId.startsWith(uid)) {
-                return commitId;
-            }
+        List<String> matches = CommitIndex.load(GITLET_DIR).findMatches(uid, 2);
+        if (matches.size() > 1) {
+            message("That commit id is ambiguous.");
+            Main.exit(0);
         }
-        return null;
+        return matches.isEmpty() ? null : matches.get(0);
     }
     private static void checkOutwithfouroprands(String[] args) {
         // checkout [commit id] –- [filename]
         String fileName = args[3];
         String commitId = findIdWithUid(args[1]);
         /* Check if the commit id exists. */
-        if (!plainFilenamesIn(COMMITS_DIR).contains(commitId)) {
+        if (commitId == null) {
             message("No commit with that id exists.");
-            System.exit(0);
+            Main.exit(0);
         }
-        Commit outCommit = Utils.readObject(join(OBJECTS_DIR, commitId), Commit.class);
+        Commit outCommit = Commit.load(commitId);
         /* Check if the operands are correct. */
         if (!args[2].equals("--")) {
             message("Incorrect operands.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Check if the file exists in the out commit. */
         if (!outCommit.getBlobs().containsKey(fileName)) {
             message("File does not exist in that commit.");
-            System.exit(0);
+            Main.exit(0);
         }
         /* Restore the file to the current directory. */
         File file = join(CWD, fileName);
-        byte[] content = Utils.readObject
-                (join(OBJECTS_DIR, outCommit.getBlobs().get(fileName)), Blobs.class).getContent();
-        Utils.writeContents(file, content);
+        Blobs.restore(outCommit.getBlobs().get(fileName), file);
     }
 
     public static void gitBranch(String name) {
@@ -463,18 +542,10 @@ public class Repository {
         /* Check if the branch exists. */
         if (plainFilenamesIn(HEADS_DIR).contains(name)) {
             message("A branch with that name already exists.");
-            System.exit(0);
+            Main.exit(0);
         }
         /* Create a new branch and set the head pointer to it. */
         Utils.writeContents(join(HEADS_DIR, name), getHeadCommitHash());
-
-        /* Update the gitlet file. */
-        Gitlet gitlet = Gitlet.load();
-        gitlet.createBranch(name);
-        Branch currentBranch = gitlet.getCurrentBranch();
-        Branch newBranch = gitlet.getBranch(name);
-        newBranch.getMergedBranches().addAll(currentBranch.getMergedBranches());
-        gitlet.save();
     }
 
     public static void gitRmbranch(String name) {
@@ -484,21 +555,18 @@ public class Repository {
         /* Check if the branch exists. */
         if (!plainFilenamesIn(HEADS_DIR).contains(name)) {
             message("A branch with that name does not exist.");
-            System.exit(0);
+            Main.exit(0);
         }
         /* Check if the branch is the current branch. */
         String currentBranch = Utils.readObject(HEAD_FILE, Head.class).getBranchName();
         if (currentBranch.equals(name)) {
             message("Cannot remove the current branch.");
-            System.exit(0);
+            Main.exit(0);
         }
         /* Remove the branch. */
-        join(HEADS_DIR, name).delete();
-
-        /* Update the gitlet file. */
-        Gitlet gitlet = Gitlet.load();
-        gitlet.removeBranch(name);
-        gitlet.save();
+        if (!Journal.delete(join(HEADS_DIR, name))) {
+            join(HEADS_DIR, name).delete();
+        }
     }
 
     /**
@@ -507,48 +575,24 @@ public class Repository {
      */
     public static void gitReset(String commitId) {
         /* Check if the commit id exists. */
-        if (!plainFilenamesIn(COMMITS_DIR).contains(commitId)) {
+        commitId = findIdWithUid(commitId);
+        if (commitId == null) {
             message("No commit with that id exists.");
-            System.exit(0);
-        }
-        /* Check if the staging area is clean. */
-        Commit headCommit = Utils.readObject
-                (join(OBJECTS_DIR, getHeadCommitHash()), Commit.class);
-        for (String file : plainFilenamesIn(CWD)) {
-            if (!headCommit.getBlobs().containsKey(file)
-                    && !plainFilenamesIn(ADD_STAGE_DIR).contains(file)) {
-                message("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                System.exit(0);
-            }
+            Main.exit(0);
         }
         /* Get the commit. */
-        Commit resetCommit = Utils.readObject(join(OBJECTS_DIR, commitId), Commit.class);
+        Commit resetCommit = Commit.load(commitId);
+        /* Check if an untracked file would be overwritten. */
+        Commit headCommit = Commit.load(getHeadCommitHash());
+        Staging staging = Staging.load();
+        checkUntrackedFiles(staging, headCommit);
         /* Update the head pointer to the commit. */
         String currentBranch = Utils.readObject(HEAD_FILE, Head.class).getBranchName();
         Utils.writeContents(join(HEADS_DIR, currentBranch), commitId);
         /* Restore the files to the current directory. */
-        for (String file : plainFilenamesIn(CWD)) {
-            if (!resetCommit.getBlobs().containsKey(file)) {
-                Utils.join(CWD, file).delete();
-            }
-        }
-        for (String file : resetCommit.getBlobs().keySet()) {
-            File newFile = Utils.join(CWD, file);
-            Blobs blob = Utils.readObject
-                    (join(OBJECTS_DIR, resetCommit.getBlobs().get(file)), Blobs.class);
-            Utils.writeContents(newFile, blob.getContent());
-        }
-        /* Clear the add stage and remove stage. */
-        clearStage(ADD_STAGE_DIR);
-        clearStage(REMOVE_STAGE_DIR);
-
-        /* Update the gitlet file. */
-        /* Update the gitlet object. */
-        Gitlet gitlet = Gitlet.load();
-        gitlet.setCurrentBranch(currentBranch);
-        gitlet.updateBranchHead(currentBranch, commitId);
-        gitlet.save();
+        /* Only the files that differ are written; the stage is cleared. */
+        verbose("%s", WorkingTree.update(staging, headCommit, resetCommit, false));
+        staging.save();
     }
 
     /**
@@ -561,10 +605,9 @@ public class Repository {
             branchName = branchName.replace("/", "_");
         }
         /* Check if the staging area is clean. */
-        if (!plainFilenamesIn(ADD_STAGE_DIR).isEmpty()
-                || !plainFilenamesIn(REMOVE_STAGE_DIR).isEmpty()) {
+        if (!Staging.load().isClean()) {
             message("You have uncommitted changes.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         String currentBranch = Utils.readObject(HEAD_FILE, Head.class).getBranchName();
@@ -572,17 +615,24 @@ public class Repository {
         /* Check if the given branch exists. */
         if (!plainFilenamesIn(HEADS_DIR).contains(branchName)) {
             message("A branch with that name does not exist.");
-            System.exit(0);
+            Main.exit(0);
         }
         /* Check if the given branch is the current branch. */
         if (currentBranch.equals(branchName)) {
             message("Cannot merge a branch with itself.");
-            System.exit(0);
+            Main.exit(0);
+        }
+        /* Find the split point in the commit graph.  When one head is an
+         * ancestor of the other, which the bitmaps tell at once, it is the split point. */
+        String givenCommitId = Utils.readContentsAsString(join(HEADS_DIR, branchName));
+        CommitGraph graph = CommitGraph.load(GITLET_DIR);
+        if (graph.isAncestor(givenCommitId, currentCommitId)) {
+            return givenCommitId;
         }
-        /* Find the split point. */
-        Gitlet gitlet = Gitlet.load();
-        Commit splitPoint = gitlet.findSplitPoint(currentBranch, branchName);
-        return splitPoint.getHashCode();
+        if (graph.isAncestor(currentCommitId, givenCommitId)) {
+            return currentCommitId;
+        }
+        return graph.mergeBase(currentCommitId, givenCommitId);
     }
 
     /**
@@ -598,7 +648,7 @@ public class Repository {
         String branchCommit = Utils.readContentsAsString(join(HEADS_DIR, branchName));
         if (splitPointCommitId.equals(branchCommit)) {
             message("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Deal with the Case 2: The split point has the same content as the current branch. */
@@ -607,7 +657,7 @@ public class Repository {
         if (splitPointCommitId.equals(currentCommit)) {
             gitCheckout(new String[]{"checkout", branchName});
             message("Current branch fast-forwarded.");
-            System.exit(0);
+            Main.exit(0);
         }
     }
 
@@ -620,19 +670,12 @@ public class Repository {
         String currentBranchName = Utils.readObject(HEAD_FILE, Head.class).getBranchName();
         String currentCommitId = Utils.readContentsAsString(join(HEADS_DIR, currentBranchName));
         String givenCommitId = Utils.readContentsAsString(join(HEADS_DIR, branchName));
-        Commit splitPoint = Utils.readObject(join(OBJECTS_DIR, splitPointCommitId), Commit.class);
-        Commit currentCommit = Utils.readObject(join(OBJECTS_DIR, currentCommitId), Commit.class);
-        Commit givenCommit = Utils.readObject(join(OBJECTS_DIR, givenCommitId), Commit.class);
+        Commit splitPoint = Commit.load(splitPointCommitId);
+        Commit currentCommit = Commit.load(currentCommitId);
+        Commit givenCommit = Commit.load(givenCommitId);
         List<String> conflictFiles = new ArrayList<>();
         /* Revise the files in the current directory. */
-        for (String file : plainFilenamesIn(CWD)) {
-            if (!currentCommit.getBlobs().containsKey(file)
-                    && !plainFilenamesIn(ADD_STAGE_DIR).contains(file)) {
-                message("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        }
+        checkUntrackedFiles(Staging.load(), currentCommit);
         /* Create a fileSet contains all the file names in split point,
          * current commit and given commit wirhout repeat
          */
@@ -668,101 +711,148 @@ public class Repository {
                     if (!spId.equals(curId)) {
                         conflictFiles.add(file);
                     } else {
-                        Utils.join(CWD, file).delete();
+                        WorkingTree.delete(file);
                         gitRm(file);
                     }
                 }
             }
         }
-        if (!conflictFiles.isEmpty()) {
+        /* The files changed on both sides are merged line by line. */
+        int conflicts = 0;
+        for (String file : conflictFiles) {
+            conflicts += processConflict(file, splitPoint, currentCommit, givenCommit);
+        }
+        if (conflicts > 0) {
             message("Encountered a merge conflict.");
-            for (String file : conflictFiles) {
-                processConflict(file, currentCommit, givenCommit);
-            }
         }
         if (branchName.contains("_")) {
             branchName = branchName.replace("_", "/");
         }
         gitCommitCaseMerge("Merged " + branchName + " into "
                 + currentBranchName + ".", givenCommitId);
-        /* Update the gitlet file. */
-        Gitlet gitlet = Gitlet.load();
-        gitlet.getCurrentBranch().addMergedBranch(branchName);
-        gitlet.save();
     }
 
-    private static void processConflict(String fileName, Commit currentCommit, Commit givenCommit) {
+    /**
+     * Merge a file that both branches changed since the split point, marking
+     * the hunks they changed differently as conflicts, see Merge, and stage it.
+     * @param fileName the file.
+     * @param splitPoint the split point.
+     * @param currentCommit the head commit of the current branch.
+     * @param givenCommit the head commit of the given branch.
+     * @return the number of conflicting hunks.
+     */
+    private static int processConflict(String fileName, Commit splitPoint,
+                                       Commit currentCommit, Commit givenCommit) {
+        String spId = splitPoint.getBlobs().get(fileName);
         String curId = currentCommit.getBlobs().get(fileName);
         String givId = givenCommit.getBlobs().get(fileName);
         File file = Utils.join(CWD, fileName);
-        String content = "<<<<<<< HEAD\n";
-        if (curId == null) {
-            content += "=======\n";
-        } else {
-            File curFile = Utils.join(OBJECTS_DIR, curId);
-            /* It needs to convert the byte[] to String. */
-            StringBuilder sb = new StringBuilder();
-            for (byte b : Utils.readObject(curFile, Blobs.class).getContent()) {
-                sb.append((char) b);
-            }
-            content += sb.toString() + "=======\n";
+        file.getParentFile().mkdirs();
+        int conflicts;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            conflicts = Merge.merge(spId == null ? null : Blobs.readContent(spId),
+                curId == null ? null : Blobs.readContent(curId),
+                givId == null ? null : Blobs.readContent(givId), out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        if (givId == null) {
-            content += ">>>>>>>\n";
+        gitAdd(fileName);
+        return conflicts;
+    }
+
+    /**
+     * Print the changes between two commits, or between a commit and the
+     * working directory, as a unified diff, see Patch.  The working
+     * directory is taken to hold the files of the head commit and the files
+     * staged for addition; the files missing from it are deleted.
+     * @param commitIds the abbreviated ids of the old and the new commit;
+     *                  without the new one, the working directory is the new
+     *                  side, and without either, the head commit is the old one.
+     */
+    public static void gitDiff(String... commitIds) {
+        Commit oldCommit = Commit.load(commitIds.length > 0 ? resolveCommitId(commitIds[0]) : getHeadCommitHash());
+        SortedMap<String, String[]> changes = new TreeMap<>();
+        Map<String, String> newBlobs;
+        if (commitIds.length > 1) {
+            Commit newCommit = Commit.load(resolveCommitId(commitIds[1]));
+            if (oldCommit.getTreeId() != null && newCommit.getTreeId() != null) {
+                /* Subtrees the commits share are not read. */
+                Tree.diff(OBJECTS_DIR, oldCommit.getTreeId(), newCommit.getTreeId(), "", changes);
+                newBlobs = null;
+            } else {
+                newBlobs = newCommit.getBlobs();
+            }
         } else {
-            File givFile = Utils.join(OBJECTS_DIR, givId);
-            /* It needs to convert the byte[] to String. */
-            StringBuilder sb = new StringBuilder();
-            for (byte b : Utils.readObject(givFile, Blobs.class).getContent()) {
-                sb.append((char) b);
+            Staging staging = Staging.load();
+            Set<String> files = new TreeSet<>(Commit.load(getHeadCommitHash()).getBlobs().keySet());
+            files.addAll(staging.getAdded().keySet());
+            files.removeIf(file -> !join(CWD, file).isFile());
+            newBlobs = staging.hashFiles(files, CWD);
+        }
+        if (newBlobs != null) {
+            Set<String> paths = new TreeSet<>(oldCommit.getBlobs().keySet());
+            paths.addAll(newBlobs.keySet());
+            for (String path : paths) {
+                String oldId = oldCommit.getBlobs().get(path);
+                String newId = newBlobs.get(path);
+                if (!Objects.equals(oldId, newId)) {
+                    changes.put(path, new String[]{oldId, newId});
+                }
             }
-            content += sb.toString() + ">>>>>>>\n";
         }
+        boolean working = commitIds.length < 2;
+        OutputStream out = new BufferedOutputStream(System.out);
+        try {
+            new Patch(out, file -> Blobs.readContent(file[1]),
+                file -> working ? readContents(join(CWD, file[0])) : Blobs.readContent(file[1]))
+                .write(changes);
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
 
-        Utils.writeContents(file, content);
-        gitAdd(fileName);
+    /**
+     * Get the full id of a commit from an abbreviated one.
+     * Exits with an error if no commit has that id.
+     * @param uid the abbreviated id.
+     */
+    private static String resolveCommitId(String uid) {
+        String commitId = findIdWithUid(uid);
+        if (commitId == null) {
+            message("No commit with that id exists.");
+            Main.exit(0);
+        }
+        return commitId;
     }
 
     public static void gitCommitCaseMerge(String message, String givenCommitId) {
         /* Check if the add stage is empty. */
-        if (plainFilenamesIn(ADD_STAGE_DIR).isEmpty()
-                && Utils.plainFilenamesIn(REMOVE_STAGE_DIR).isEmpty()) {
+        Staging staging = Staging.load();
+        if (staging.isClean()) {
             message("No changes added to the commit.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Check if the message is empty. */
         if (message.isEmpty()) {
             message("Please enter a commit message.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Get the commit id of the head commit. */
         String currentBranch = Utils.readObject(HEAD_FILE, Head.class).getBranchName();
         String headCommitHash = Utils.readContentsAsString(join(HEADS_DIR, currentBranch));
-        Commit newCommit = new Commit(message, headCommitHash);
-        newCommit.setSecondParent(givenCommitId);
+        Commit newCommit = new Commit(message, headCommitHash, givenCommitId, staging);
         newCommit.saveCommit();
-
-        /* Update the object directory. */
-        for (String file : plainFilenamesIn(ADD_STAGE_DIR)) {
-            File addStageFile = join(ADD_STAGE_DIR, file);
-            byte[] content = Utils.readContents(addStageFile);
-            Blobs newBlob = new Blobs(content);
-            newBlob.saveBlob();
-        }
+        /* The blobs of the staged files were saved by gitAdd already. */
 
         /* Update the head pointer to the new commit. */
         Utils.writeContents(join(HEADS_DIR, currentBranch), newCommit.getHashCode());
 
-        /* Update the gitlet file. */
-        Gitlet gitlet = Gitlet.load();
-        gitlet.addCommit(newCommit);
-        gitlet.save();
-
         /* Clear the add stage and remove stage. */
-        clearStage(ADD_STAGE_DIR);
-        clearStage(REMOVE_STAGE_DIR);
+        staging.clear(newCommit);
+        staging.save();
     }
 
     public static void gitAddremote(String name, String path) {
@@ -771,7 +861,7 @@ public class Repository {
         /* Check if the remote name exists. */
         if (remoteFile.exists()) {
             message("A remote with that name already exists.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Add the remote. */
@@ -785,11 +875,13 @@ public class Repository {
         /* Check if the remote name exists. */
         if (!remoteFile.exists()) {
             message("A remote with that name does not exist.");
-            System.exit(0);
+            Main.exit(0);
         }
 
         /* Remove the remote. */
-        remoteFile.delete();
+        if (!Journal.delete(remoteFile)) {
+            remoteFile.delete();
+        }
     }
 
     public static void gitPush(String repoName, String branchName) {
@@ -799,62 +891,24 @@ public class Repository {
 
         if (!remote.getRemoteDir().exists()) {
             message("Remote directory not found.");
-            System.exit(0);
-        }
-
-        /* check if the remote head in the branch of current local head */
-        File remoteHeadFile = Utils.join(remote.getRemoteDir(), "refs", "heads", branchName);
-        String remoteHeadId = Utils.readContentsAsString(remoteHeadFile);
-        Gitlet gitlet = Gitlet.load();
-        Branch currentBranch = gitlet.getCurrentBranch();
-        List<Commit> currentCommits = currentBranch.getCommits();
-        if (!checkRemoteHead(remoteHeadId, currentCommits)) {
-            message("Please pull down remote changes before pushing.");
-            System.exit(0);
-        }
-
-        /* Update the remote head to the current head. */
-        File localHeadFile = Utils.join(HEADS_DIR, branchName);
-        Utils.writeContents(remoteHeadFile, Utils.readContentsAsString(localHeadFile));
-
-        /* Update the remote gitlet file. */
-        File remoteGitletFile = Utils.join(remote.getRemoteDir(), "gitlet");
-        Gitlet remoteGitlet = Utils.readObject(remoteGitletFile, Gitlet.class);
-        boolean isFuture = false;
-        for (Commit commit : currentCommits) {
-            if (isFuture) {
-                remoteGitlet.addCommit(commit);
-                /* Update the object directory. */
-                for (String file : commit.getBlobs().keySet()) {
-                    File blobFile = Utils.join(OBJECTS_DIR, commit.getBlobs().get(file));
-                    Blobs blob = Utils.readObject(blobFile, Blobs.class);
-                    File remoteBlobFile = Utils.join(remote.getRemoteDir(), "objects");
-                    remoteBlobFile = Utils.join(remoteBlobFile, commit.getBlobs().get(file));
-                    Utils.writeObject(remoteBlobFile, blob);
-                }
-                /* Update the commit directory. */
-                File commitFile = Utils.join(remote.getRemoteDir(), "objects", "commits");
-                File objectFile = Utils.join(remote.getRemoteDir(), "objects");
-                objectFile = Utils.join(objectFile, commit.getHashCode());
-                commitFile = Utils.join(commitFile, commit.getHashCode());
-                Utils.writeObject(commitFile, commit);
-                Utils.writeObject(objectFile, commit);
-            }
-            if (commit.getHashCode().equals(remoteHeadId)) {
-                isFuture = true;
+            Main.exit(0);
+        }
+
+        /* The remote is locked while it is read and written. */
+        Daemon.runLocked(remote.getRemoteDir(), () -> {
+            /* Check if the remote head is in the history of the local branch. */
+            File remoteHeadFile = Utils.join(remote.getRemoteDir(), "refs", "heads", branchName);
+            String remoteHeadId = Utils.readContentsAsString(remoteHeadFile);
+            String localHeadId = Utils.readContentsAsString(join(HEADS_DIR, branchName));
+            if (!CommitGraph.load(GITLET_DIR).isAncestor(remoteHeadId, localHeadId)) {
+                message("Please pull down remote changes before pushing.");
+                Main.exit(0);
             }
-        }
-        /* Update the remote branch in the remote gitlet file. */
-        Utils.writeObject(remoteGitletFile, remoteGitlet);
-    }
 
-    private static boolean checkRemoteHead(String remoteHeadId, List<Commit> currentCommits) {
-        for (Commit commit : currentCommits) {
-            if (commit.getHashCode().equals(remoteHeadId)) {
-                return true;
-            }
-        }
-        return false;
+            /* Send the commits and objects the remote does not have yet, then move its head. */
+            verbose("Sent %d objects.", Transfer.send(GITLET_DIR, remote.getRemoteDir(), localHeadId));
+            Utils.writeContents(remoteHeadFile, localHeadId);
+        });
     }
 
     public static void gitFetch(String repoName, String branchName) {
@@ -864,50 +918,28 @@ public class Repository {
         String localBranchName = repoName + "_" + branchName;
         if (!remote.getRemoteDir().exists()) {
             message("Remote directory not found.");
-            System.exit(0);
-        }
-
-        /* Check if the remote branch exists. */
-        File remoteHeadFile = Utils.join(remote.getRemoteDir(), "refs", "heads", branchName);
-        if (!remoteHeadFile.exists()) {
-            message("That remote does not have that branch.");
-            System.exit(0);
-        }
-
-        /* Update the local gitlet file. */
-
-        Gitlet gitlet = Gitlet.load();
-        File remoteGitletFile = Utils.join(remote.getRemoteDir(), "gitlet");
-        Gitlet remoteGitlet = Utils.readObject(remoteGitletFile, Gitlet.class);
-        gitlet.createBranch(localBranchName);
-        Branch newBranch = gitlet.getBranch(localBranchName);
-        newBranch.getMergedBranches().addAll(remoteGitlet.getCurrentBranch().getMergedBranches());
-        List<Commit> currentCommits = newBranch.getCommits();
-        List<Commit> remoteCommits = remoteGitlet.getBranch(branchName).getCommits();
-        currentCommits.clear();
-        currentCommits.addAll(remoteCommits);
-
-        /* Copy the commits and blobs from the remote gitlet file to the local gitlet file. */
-        for (Commit commit : remoteGitlet.getBranch(branchName).getCommits()) {
-            File commitFile = Utils.join(OBJECTS_DIR, commit.getHashCode());
-            Utils.writeObject(commitFile, commit);
-            commitFile = Utils.join(COMMITS_DIR, commit.getHashCode());
-            Utils.writeObject(commitFile, commit);
-            for (String file : commit.getBlobs().keySet()) {
-                File remoteBlobFile = Utils.join(remote.getRemoteDir(), "objects");
-                remoteBlobFile = Utils.join(remoteBlobFile, commit.getBlobs().get(file));
-                File blobFile = Utils.join(OBJECTS_DIR, commit.getBlobs().get(file));
-                Blobs blob = Utils.readObject(remoteBlobFile, Blobs.class);
-                Utils.writeObject(blobFile, blob);
-            }
+            Main.exit(0);
         }
 
-        /* Replace the "/" with "_" in the branch name. */
-        String localBranch = localBranchName.replace("/", "_");
-        /* Update the head/branch pointer to the new commit. */
-        File branchFile = Utils.join(HEADS_DIR,  localBranch);
-        Utils.writeContents(branchFile, Utils.readContentsAsString(remoteHeadFile));
-        gitlet.save();
+        /* The remote is locked while it is read, so that no command changes it meanwhile. */
+        Daemon.runLocked(remote.getRemoteDir(), () -> {
+            /* Check if the remote branch exists. */
+            File remoteHeadFile = Utils.join(remote.getRemoteDir(), "refs", "heads", branchName);
+            if (!remoteHeadFile.exists()) {
+                message("That remote does not have that branch.");
+                Main.exit(0);
+            }
+
+            /* Receive the commits and objects the local repository does not have yet. */
+            String remoteHeadId = Utils.readContentsAsString(remoteHeadFile);
+            verbose("Received %d objects.", Transfer.send(remote.getRemoteDir(), GITLET_DIR, remoteHeadId));
+
+            /* Replace the "/" with "_" in the branch name. */
+            String localBranch = localBranchName.replace("/", "_");
+            /* Update the head/branch pointer to the new commit. */
+            File branchFile = Utils.join(HEADS_DIR,  localBranch);
+            Utils.writeContents(branchFile, remoteHeadId);
+        });
     }
 
 
@@ -915,4 +947,107 @@ public class Repository {
         gitFetch(repoName, branchName);
         gitMerge(repoName + "/" + branchName);
     }
+
+    /**
+     * Fold all the loose objects into the pack, then delete the loose files.
+     * A blob that changed a file of a loose commit is stored as a delta
+     * against the file's blob in the parent commit, see Pack.
+     * The bitmaps of the ancestors of the branch tips are written anew, see
+     * CommitGraph.  The copies that old repositories kept in objects/commits
+     * are dropped once they are in the commit log.
+     * @param maxDepth the longest chain of deltas, or 0 for no deltas.
+     */
+    public static void gitRepack(int maxDepth) {
+        Set<String> loose = new HashSet<>();
+        for (String name : plainFilenamesIn(OBJECTS_DIR)) {
+            if (Pack.isObjectId(name)) {
+                loose.add(name);
+            }
+        }
+        /* The base of each blob; bases go into the pack before their blobs. */
+        Map<String, String> deltaBases = new LinkedHashMap<>();
+        for (String commitId : Commit.allCommitIds(GITLET_DIR)) {
+            if (loose.contains(commitId)) {
+                findDeltaBases(Commit.load(commitId), loose, deltaBases);
+            }
+        }
+        List<File> looseFiles = new ArrayList<>();
+        for (String name : new TreeSet<>(loose)) {
+            if (!deltaBases.containsKey(name)) {
+                looseFiles.add(join(OBJECTS_DIR, name));
+            }
+        }
+        for (String name : deltaBases.keySet()) {
+            looseFiles.add(join(OBJECTS_DIR, name));
+        }
+        int packed = Pack.of(OBJECTS_DIR).append(looseFiles, deltaBases, maxDepth);
+        /* The pack is synced, so the loose files are deleted as part of the command. */
+        for (File file : looseFiles) {
+            if (!Journal.delete(file)) {
+                file.delete();
+            }
+        }
+        List<String> heads = new ArrayList<>();
+        for (String branch : plainFilenamesIn(HEADS_DIR)) {
+            heads.add(readContentsAsString(join(HEADS_DIR, branch)));
+        }
+        CommitGraph.load(GITLET_DIR).writeBitmaps(heads);
+
+        File legacyCommitsDir = join(OBJECTS_DIR, "commits");
+        if (legacyCommitsDir.isDirectory()) {
+            /* Loading the commit log records these commits first. */
+            CommitLog.load(GITLET_DIR);
+            for (String name : plainFilenamesIn(legacyCommitsDir)) {
+                File file = join(legacyCommitsDir, name);
+                if (!Journal.delete(file)) {
+                    file.delete();
+                }
+            }
+            Journal.afterCommit(legacyCommitsDir::delete);
+        }
+        message("Packed %d objects.", packed);
+    }
+
+    /**
+     * Delete the objects that no branch reaches, including the remote
+     * branches that fetch made, and that are not staged, and drop the
+     * commits no branch reaches from global-log and find.  Prints the number
+     * of objects removed and the bytes that freed, see GarbageCollector.
+     */
+    public static void gitGc() {
+        List<String> heads = new ArrayList<>();
+        for (String branch : plainFilenamesIn(HEADS_DIR)) {
+            heads.add(readContentsAsString(join(HEADS_DIR, branch)));
+        }
+        new GarbageCollector(GITLET_DIR).collect(heads, Staging.load().getAdded().values());
+    }
+
+    /**
+     * Suggest the blob of each file that a commit changed as the base of the
+     * file's new blob, if the new blob is loose.
+     * @param commit the commit.
+     * @param loose the ids of the loose objects.
+     * @param deltaBases the bases by blob id, in the order to pack the blobs.
+     */
+    private static void findDeltaBases(Commit commit, Set<String> loose,
+                                       Map<String, String> deltaBases) {
+        Commit parent = commit.getFirstParent();
+        if (parent == null) {
+            return;
+        }
+        Map<String, String[]> changes = new TreeMap<>();
+        if (commit.getTreeId() != null && parent.getTreeId() != null) {
+            Tree.diff(OBJECTS_DIR, parent.getTreeId(), commit.getTreeId(), "", changes);
+        } else {
+            for (Map.Entry<String, String> file : commit.getBlobs().entrySet()) {
+                changes.put(file.getKey(), new String[]{parent.getBlobs().get(file.getKey()), file.getValue()});
+            }
+        }
+        for (String[] change : changes.values()) {
+            if (change[0] != null && change[1] != null && !change[0].equals(change[1])
+                    && loose.contains(change[1]) && !deltaBases.containsKey(change[1])) {
+                deltaBases.put(change[1], change[0]);
+            }
+        }
+    }
 }
@@ -1,9 +1,425 @@
 package gitlet;
 
-import java.io.File;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
 
+/**
+ * The staging area, kept in the binary index file .gitlet/index.
+ * The index has one entry for every file tracked by the head commit or staged.
+ * Each entry records the blob id of the file, whether it is staged for addition
+ * or removal, and the size and modification time the working file had when it
+ * was last hashed.  A working file whose size and modification time still match
+ * its entry is known to have that blob id without being read again.
+ *  @Author Zhang, Xiaochen
+ */
 public class Staging {
-    /** Staging files' directory */
-    public static final  File STAGING_DIR = Utils.join(Repository.GITLET_DIR, "stagingArea");
+    /** The index file. */
+    public static final File INDEX_FILE = Utils.join(Repository.GITLET_DIR, "index");
+    /** The magic number at the head of the index file, "GSTG". */
+    private static final int MAGIC = 0x47535447;
+    /** The version of the index format. */
+    private static final int VERSION = 1;
 
+    /** The file is tracked by the head commit and not staged. */
+    private static final byte TRACKED = 0;
+    /** The file is staged for addition. */
+    private static final byte ADDED = 1;
+    /** The file is staged for removal. */
+    private static final byte REMOVED = 2;
+
+    /** An entry of the index. */
+    private static class Entry {
+        /** The state of the file: TRACKED, ADDED or REMOVED. */
+        private byte state;
+        /** The blob id of the file. */
+        private String blobId;
+        /** The size of the working file when it was hashed, or -1 if unknown. */
+        private long size = -1;
+        /** The modification time of the working file when it was hashed. */
+        private long mtime;
+    }
+
+    /** The blob id and the stat information of a working file, as found by hashFiles. */
+    private static class Hashed {
+        private final String blobId;
+        private final long[] stat;
+
+        Hashed(String blobId, long[] stat) {
+            this.blobId = blobId;
+            this.stat = stat;
+        }
+    }
+
+    /** The entries, by file name. */
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    /** The modification time of the index file when it was loaded. */
+    private long indexTime;
+    /** True if the entries changed since they were loaded. */
+    private boolean dirty;
+
+    private Staging() {
+    }
+
+    /**
+     * Load the staging area from the index file.
+     * Repositories made before the index kept the stage in the addstage and
+     * removestage directories; they are folded into a new index here, which
+     * is saved at once with the old directories deleted in the same command.
+     */
+    public static Staging load() {
+        Staging staging = new Staging();
+        /* Saved by the running command, which has not written it in place yet. */
+        byte[] pending = Journal.read(INDEX_FILE);
+        if (pending == null && !INDEX_FILE.isFile()) {
+            staging.migrateStageDirs();
+            return staging;
+        }
+        staging.indexTime = pending != null ? System.currentTimeMillis() : INDEX_FILE.lastModified();
+        try (DataInputStream in = new DataInputStream(pending != null ? new ByteArrayInputStream(pending)
+                : new BufferedInputStream(new FileInputStream(INDEX_FILE)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw Utils.error("Corrupted index file.");
+            }
+            int count = in.readInt();
+            byte[] raw = new byte[Utils.UID_LENGTH / 2];
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Entry entry = new Entry();
+                entry.state = in.readByte();
+                in.readFully(raw);
+                entry.blobId = Utils.toHex(raw);
+                entry.size = in.readLong();
+                entry.mtime = in.readLong();
+                staging.entries.put(name, entry);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return staging;
+    }
+
+    /**
+     * Build the entries from the old stage directories and the head commit,
+     * save them, then delete the old stage, so that no caller that does not
+     * save the index loses the staged files.
+     */
+    private void migrateStageDirs() {
+        File headFile = Repository.HEAD_FILE;
+        if (headFile.isFile()) {
+            String branch = Utils.readObject(headFile, Head.class).getBranchName();
+            String headId = Utils.readContentsAsString(Utils.join(Repository.HEADS_DIR, branch));
+            Commit head = Commit.load(headId);
+            for (Map.Entry<String, String> file : head.getBlobs().entrySet()) {
+                put(file.getKey(), TRACKED, file.getValue());
+            }
+        }
+        File addStage = Utils.join(Repository.GITLET_DIR, "addstage");
+        File removeStage = Utils.join(Repository.GITLET_DIR, "removestage");
+        List<File> oldFiles = new ArrayList<>();
+        List<String> added = Utils.plainFilenamesIn(addStage);
+        if (added != null) {
+            for (String file : added) {
+                /* The old stage kept a copy of the file, which becomes its blob. */
+                put(file, ADDED, Blobs.saveBlob(Utils.join(addStage, file)));
+                oldFiles.add(Utils.join(addStage, file));
+            }
+        }
+        List<String> removed = Utils.plainFilenamesIn(removeStage);
+        if (removed != null) {
+            for (String file : removed) {
+                if (entries.containsKey(file)) {
+                    entries.get(file).state = REMOVED;
+                }
+                oldFiles.add(Utils.join(removeStage, file));
+            }
+        }
+        dirty = true;
+        save();
+        for (File file : oldFiles) {
+            if (!Journal.delete(file)) {
+                file.delete();
+            }
+        }
+        if (added != null) {
+            Journal.afterCommit(addStage::delete);
+        }
+        if (removed != null) {
+            Journal.afterCommit(removeStage::delete);
+        }
+    }
+
+    private Entry put(String file, byte state, String blobId) {
+        Entry entry = new Entry();
+        entry.state = state;
+        entry.blobId = blobId;
+        entries.put(file, entry);
+        dirty = true;
+        return entry;
+    }
+
+    /**
+     * Write the index file if anything changed.  The new index goes to the
+     * journal of the running command, or else is written to a temporary
+     * file first and then renamed over the old one.
+     */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                out.writeByte(entry.state);
+                out.write(Utils.fromHex(entry.blobId));
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        dirty = false;
+        if (Journal.write(INDEX_FILE, bytes.toByteArray())) {
+            return;
+        }
+        File tmp = Utils.join(Repository.GITLET_DIR, "index.tmp");
+        try {
+            Files.write(tmp.toPath(), bytes.toByteArray());
+            Files.move(tmp.toPath(), INDEX_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Stage a file for addition.
+     * @param file the file name.
+     * @param blobId the id of the saved blob of the file.
+     */
+    public void stageAdd(String file, String blobId) {
+        Entry old = entries.get(file);
+        Entry entry = put(file, ADDED, blobId);
+        if (old != null && old.blobId.equals(blobId)) {
+            entry.size = old.size;
+            entry.mtime = old.mtime;
+        }
+    }
+
+    /**
+     * Stage a file tracked by the head commit for removal.
+     * @param file the file name.
+     * @param blobId the id of the file in the head commit.
+     */
+    public void stageRemove(String file, String blobId) {
+        put(file, REMOVED, blobId);
+    }
+
+    /**
+     * Drop the staged addition or removal of a file, so that it goes back
+     * to the version in the head commit.
+     * @param file the file name.
+     * @param headBlobId the id of the file in the head commit, or null if untracked.
+     */
+    public void unstage(String file, String headBlobId) {
+        Entry entry = entries.get(file);
+        if (entry == null || entry.state == TRACKED) {
+            return;
+        }
+        if (headBlobId == null) {
+            entries.remove(file);
+        } else {
+            if (!entry.blobId.equals(headBlobId)) {
+                entry.blobId = headBlobId;
+                entry.size = -1;
+            }
+            entry.state = TRACKED;
+        }
+        dirty = true;
+    }
+
+    public boolean isStagedForAddition(String file) {
+        Entry entry = entries.get(file);
+        return entry != null && entry.state == ADDED;
+    }
+
+    public boolean isStagedForRemoval(String file) {
+        Entry entry = entries.get(file);
+        return entry != null && entry.state == REMOVED;
+    }
+
+    /** Get the files staged for addition and their blob ids, in name order. */
+    public SortedMap<String, String> getAdded() {
+        TreeMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            if (item.getValue().state == ADDED) {
+                result.put(item.getKey(), item.getValue().blobId);
+            }
+        }
+        return result;
+    }
+
+    /** Get the files staged for removal, in name order. */
+    public SortedSet<String> getRemoved() {
+        TreeSet<String> result = new TreeSet<>();
+        for (Map.Entry<String, Entry> item : entries.entrySet()) {
+            if (item.getValue().state == REMOVED) {
+                result.add(item.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** Check if nothing is staged. */
+    public boolean isClean() {
+        for (Entry entry : entries.values()) {
+            if (entry.state != TRACKED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Clear the stage and track exactly the files of the given commit,
+     * as after a commit or a reset.  The cached stat information
+     * of a file is kept when its blob id did not change.
+     * @param commit the new head commit.
+     */
+    public void clear(Commit commit) {
+        TreeMap<String, Entry> old = new TreeMap<>(entries);
+        entries.clear();
+        for (Map.Entry<String, String> file : commit.getBlobs().entrySet()) {
+            Entry entry = put(file.getKey(), TRACKED, file.getValue());
+            Entry oldEntry = old.get(file.getKey());
+            if (oldEntry != null && oldEntry.blobId.equals(file.getValue())) {
+                entry.size = oldEntry.size;
+                entry.mtime = oldEntry.mtime;
+            }
+        }
+        dirty = true;
+    }
+
+    /**
+     * Track the files of the given commit, as after a checkout of a branch,
+     * but keep the files staged for addition or removal staged as they are.
+     * @param commit the new head commit.
+     */
+    public void retrack(Commit commit) {
+        TreeMap<String, Entry> old = new TreeMap<>(entries);
+        clear(commit);
+        for (Map.Entry<String, Entry> item : old.entrySet()) {
+            if (item.getValue().state != TRACKED) {
+                entries.put(item.getKey(), item.getValue());
+            }
+        }
+    }
+
+    /**
+     * Get the blob id of a working file, using the cached stat information
+     * when the size and the modification time of the file did not change.
+     * Otherwise the file is hashed and its entry, if any, is refreshed.
+     * @param file the file name.
+     * @param workingFile the working file.
+     */
+    public String hashFile(String file, File workingFile) {
+        Entry entry = entries.get(file);
+        long[] stat = stat(workingFile);
+        String blobId = isFresh(entry, stat) ? entry.blobId : Utils.sha1File(workingFile);
+        refresh(entry, blobId, stat);
+        return blobId;
+    }
+
+    /**
+     * Get the blob id of a working file from the cached stat information
+     * alone, if the file did not change since it was hashed.
+     * @param file the file name.
+     * @param workingFile the working file.
+     * @return the blob id, or null if the file would have to be hashed.
+     */
+    public String cachedHash(String file, File workingFile) {
+        Entry entry = entries.get(file);
+        return isFresh(entry, stat(workingFile)) ? entry.blobId : null;
+    }
+
+    /**
+     * Get the blob ids of several working files, as hashFile does.  The files
+     * are looked at and, when their stat information is not cached, hashed in
+     * parallel; the entries are only refreshed afterwards, on this thread.
+     * @param files the file names.
+     * @param dir the directory of the working files.
+     * @return the blob ids, by file name.
+     */
+    public SortedMap<String, String> hashFiles(Collection<String> files, File dir) {
+        List<String> names = new ArrayList<>(files);
+        List<Hashed> hashed = Parallel.map(names, file -> {
+            File workingFile = Utils.join(dir, file);
+            Entry entry = entries.get(file);
+            long[] stat = stat(workingFile);
+            String blobId = isFresh(entry, stat) ? entry.blobId : Utils.sha1File(workingFile);
+            return new Hashed(blobId, stat);
+        });
+        SortedMap<String, String> result = new TreeMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            Hashed file = hashed.get(i);
+            refresh(entries.get(names.get(i)), file.blobId, file.stat);
+            result.put(names.get(i), file.blobId);
+        }
+        return result;
+    }
+
+    /**
+     * Check if the cached stat information of ENTRY still matches the working
+     * file with the stat information STAT, so that its blob id can be trusted.
+     * A file changed in the same tick the index was written is "racy" and
+     * cannot be trusted to its modification time alone.
+     */
+    private boolean isFresh(Entry entry, long[] stat) {
+        return entry != null && entry.size == stat[0] && entry.mtime == stat[1]
+                && entry.mtime < indexTime;
+    }
+
+    /** Cache STAT in ENTRY if the working file was found to have its blob id BLOBID. */
+    private void refresh(Entry entry, String blobId, long[] stat) {
+        if (entry != null && entry.blobId.equals(blobId)
+                && (entry.size != stat[0] || entry.mtime != stat[1])) {
+            entry.size = stat[0];
+            entry.mtime = stat[1];
+            dirty = true;
+        }
+    }
+
+    /**
+     * Record that a working file has the given blob id, for example right
+     * after it was restored from that blob.
+     * @param file the file name.
+     * @param blobId the blob id of the working file.
+     * @param workingFile the working file.
+     */
+    public void remember(String file, String blobId, File workingFile) {
+        Entry entry = entries.get(file);
+        if (entry != null && entry.blobId.equals(blobId)) {
+            long[] stat = stat(workingFile);
+            entry.size = stat[0];
+            entry.mtime = stat[1];
+            dirty = true;
+        }
+    }
+
+    /** Return the size and the modification time of FILE. */
+    private static long[] stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new long[]{attrs.size(), attrs.lastModifiedTime().toMillis()};
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
 }
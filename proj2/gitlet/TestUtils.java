@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** The helpers the tests share: running gitlet in a directory, recording
+ *  failed checks, and making and removing the files of a test.
+ *  @author Zhang, Xiaochen
+ */
+class TestUtils {
+    /** The number of failed checks. */
+    private static int failures;
+
+    /** Record a failed check NAME of TEST unless OK. */
+    static void check(String test, String name, boolean ok) {
+        if (!ok) {
+            System.out.println(test + ": " + name + " is wrong");
+            failures += 1;
+        }
+    }
+
+    /** Returns the number of failed checks so far. */
+    static int failures() {
+        return failures;
+    }
+
+    /** Print that TEST is correct, or else the number of failed checks and
+     *  exit with code 1. */
+    static void finish(String test) {
+        if (failures > 0) {
+            System.out.println(failures + " checks failed.");
+            System.exit(1);
+        }
+        System.out.println(test + ": correct");
+    }
+
+    /** Run gitlet with ARGS in DIR and return what it printed. */
+    static String gitlet(File dir, String... args) throws IOException, InterruptedException {
+        return runMain(dir, Main.class, args);
+    }
+
+    /** Run the main method of MAINCLASS with ARGS in DIR, in a new process,
+     *  and return what it printed. */
+    static String runMain(File dir, Class<?> mainClass, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(List.of(args));
+        ProcessBuilder builder = new ProcessBuilder(command).directory(dir).redirectErrorStream(true);
+        Process process = builder.start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        process.waitFor();
+        return output;
+    }
+
+    /** Returns a new empty directory whose name starts with PREFIX. */
+    static File tempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /** Write CONTENT into the file at PATH under DIR, making its directories. */
+    static void write(File dir, String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content);
+    }
+
+    /** Returns the content of the file at PATH under DIR, or "" if there is none. */
+    static String read(File dir, String path) throws IOException {
+        File file = new File(dir, path);
+        return file.isFile() ? Files.readString(file.toPath()) : "";
+    }
+
+    /** Returns SIZE bytes of lines of random numbers, which compress like text. */
+    static byte[] makeText(int size, Random random) {
+        StringBuilder text = new StringBuilder(size + 100);
+        while (text.length() < size) {
+            text.append(random.nextLong()).append(' ').append(random.nextLong()).append('\n');
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns a copy of TEXT with a random line changed. */
+    static byte[] editLine(byte[] text, Random random) {
+        String s = new String(text, StandardCharsets.UTF_8);
+        int start = s.indexOf('\n', random.nextInt(s.length() / 2)) + 1;
+        int end = s.indexOf('\n', start);
+        return (s.substring(0, start) + "edited " + random.nextInt() + s.substring(end))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Copy the files under FROM to the same paths under TO. */
+    static void copy(File from, File to) throws IOException {
+        Path fromPath = from.toPath();
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(fromPath)) {
+            paths = walk.collect(Collectors.toList());
+        }
+        for (Path path : paths) {
+            Path target = to.toPath().resolve(fromPath.relativize(path).toString());
+            if (Files.isDirectory(path)) {
+                Files.createDirectories(target);
+            } else {
+                Files.copy(path, target);
+            }
+        }
+    }
+
+    /** Delete FILE and everything in it. */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
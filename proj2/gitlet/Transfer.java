@@ -0,0 +1,233 @@
+package gitlet;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Sends commits from one repository to another, for fetch and push.
+ * The two sides first negotiate: the receiver tells the tips of its
+ * branches, which it has with all their history, and the sender walks its
+ * commit graph from the wanted commit down to the commits those tips reach.
+ * The commits on the way are the ones the receiver misses.  Of their trees
+ * and blobs, only what changed from the first parent is sent, since the
+ * receiver has the parent or is sent it first, and subtrees that did not
+ * change are not read.  A changed chunked blob is sent without the chunks
+ * it shares with the version in the parent.
+ * The missing objects are streamed in one transfer pack, written into the
+ * pack directory of the receiver as incoming.pack: the magic number and
+ * the version, then for each object its raw id, its length and its bytes.
+ * Each object comes after the objects it names.  The receiver appends
+ * them to its pack in one go, and then saves the commits, oldest first.
+ *  @Author Zhang, Xiaochen
+ */
+class Transfer {
+    /** The name of the transfer pack in the pack directory of the receiver. */
+    static final String INCOMING_NAME = "incoming.pack";
+    /** The magic number at the head of a transfer pack, "GTRN". */
+    private static final int MAGIC = 0x4754524e;
+    /** The version of the transfer pack format. */
+    private static final int VERSION = 1;
+
+    /** The .gitlet directory of the sender. */
+    private final File fromDir;
+    /** The objects directory of the sender. */
+    private final File fromObjects;
+    /** The .gitlet directory of the receiver. */
+    private final File toDir;
+    /** The ids of the objects the receiver has or is sent already. */
+    private final Set<String> known = new HashSet<>();
+    /** The transfer pack being written. */
+    private DataOutputStream out;
+    /** The number of objects written to the transfer pack. */
+    private int sent;
+
+    private Transfer(File fromDir, File toDir) {
+        this.fromDir = fromDir;
+        this.fromObjects = Utils.join(fromDir, "objects");
+        this.toDir = toDir;
+    }
+
+    /**
+     * Send a commit and all that it needs and the receiver misses.
+     * @param fromDir the .gitlet directory of the sender.
+     * @param toDir the .gitlet directory of the receiver.
+     * @param wantId the id of the commit wanted.
+     * @return the number of objects sent.
+     */
+    static int send(File fromDir, File toDir, String wantId) {
+        if (CommitIndex.load(toDir).contains(wantId)) {
+            return 0;
+        }
+        Transfer transfer = new Transfer(fromDir, toDir);
+        List<String> missing = transfer.negotiate(tips(toDir), wantId);
+        transfer.stream(missing);
+        for (String commitId : missing) {
+            Commit.load(transfer.fromObjects, commitId).saveCommit(toDir);
+        }
+        return transfer.sent;
+    }
+
+    /**
+     * Get the tips of the branches of a repository, which the repository
+     * has with all their history.
+     * @param gitletDir the .gitlet directory.
+     */
+    static List<String> tips(File gitletDir) {
+        List<String> tips = new ArrayList<>();
+        File headsDir = Utils.join(gitletDir, "refs", "heads");
+        for (String branch : Utils.plainFilenamesIn(headsDir)) {
+            tips.add(Utils.readContentsAsString(Utils.join(headsDir, branch)));
+        }
+        return tips;
+    }
+
+    /**
+     * Find the commits that the wanted commit reaches and no tip of the
+     * receiver does, with two walks of the commit graph of the sender, which
+     * take the ancestors of commits with bitmaps from their bitmaps.
+     * Tips the sender does not know are no help and are passed over.
+     * @param haves the tips of the branches of the receiver.
+     * @param wantId the id of the commit wanted.
+     * @return the ids of the missing commits, parents before children.
+     */
+    private List<String> negotiate(List<String> haves, String wantId) {
+        CommitGraph graph = CommitGraph.load(fromDir);
+        if (!graph.contains(wantId)) {
+            graph.add(Commit.load(fromObjects, wantId));
+        }
+        List<Integer> havePositions = new ArrayList<>();
+        for (String have : haves) {
+            havePositions.add(graph.position(have));
+        }
+        BitSet common = graph.reachable(havePositions, null);
+        BitSet missing = graph.reachable(List.of(graph.position(wantId)), common);
+        missing.andNot(common);
+        /* A commit comes after its parents in the graph. */
+        List<String> ids = new ArrayList<>();
+        for (int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1)) {
+            ids.add(graph.id(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Write the objects of the missing commits into the transfer pack, and
+     * have the receiver append them to its pack.
+     * @param missing the ids of the missing commits, parents before children.
+     */
+    private void stream(List<String> missing) {
+        File incoming = Utils.join(toDir, "objects", Pack.PACK_DIR_NAME, INCOMING_NAME);
+        incoming.getParentFile().mkdirs();
+        try {
+            try (DataOutputStream stream = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(incoming)))) {
+                out = stream;
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                for (String commitId : missing) {
+                    sendCommit(Commit.load(fromObjects, commitId));
+                }
+            }
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(incoming)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw Utils.error("Corrupted transfer pack %s.", incoming);
+                }
+                Pack.of(Utils.join(toDir, "objects")).receive(in);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            incoming.delete();
+        }
+    }
+
+    /** Send the trees and the blobs of COMMIT that changed from its first parent, then COMMIT. */
+    private void sendCommit(Commit commit) throws IOException {
+        Commit parent = commit.getFirstParentId() == null ? null
+            : Commit.load(fromObjects, commit.getFirstParentId());
+        if (commit.getTreeId() == null) {
+            Map<String, String> parentBlobs = parent == null ? Map.of() : parent.getBlobs();
+            for (Map.Entry<String, String> file : commit.getBlobs().entrySet()) {
+                sendBlob(file.getValue(), parentBlobs.get(file.getKey()));
+            }
+        } else {
+            if (parent != null && parent.getTreeId() == null) {
+                /* A parent made before trees lists its blobs, which the receiver has. */
+                known.addAll(parent.getBlobs().values());
+            }
+            sendTree(commit.getTreeId(), parent == null ? null : parent.getTreeId());
+        }
+        sendObject(commit.getHashCode(), Utils.readObjectContents(Utils.join(fromObjects, commit.getHashCode())));
+    }
+
+    /**
+     * Send a tree with what changed under it from an old tree, then the tree itself.
+     * @param treeId the id of the tree.
+     * @param oldId the id of the same directory's tree in the parent, or null.
+     */
+    private void sendTree(String treeId, String oldId) throws IOException {
+        if (treeId.equals(oldId) || known.contains(treeId)) {
+            return;
+        }
+        SortedMap<String, String> oldEntries = oldId == null ? Tree.EMPTY.getEntries()
+            : Tree.load(fromObjects, oldId).getEntries();
+        for (Map.Entry<String, String> entry : Tree.load(fromObjects, treeId).getEntries().entrySet()) {
+            String oldEntry = oldEntries.get(entry.getKey());
+            if (entry.getKey().endsWith(Tree.DIR_SUFFIX)) {
+                sendTree(entry.getValue(), oldEntry);
+            } else if (!entry.getValue().equals(oldEntry)) {
+                sendBlob(entry.getValue(), oldEntry);
+            }
+        }
+        sendObject(treeId, Utils.readObjectContents(Utils.join(fromObjects, treeId)));
+    }
+
+    /**
+     * Send a blob, with the chunks it does not share with the old version.
+     * @param blobId the id of the blob.
+     * @param oldId the id of the same file's blob in the parent, or null.
+     */
+    private void sendBlob(String blobId, String oldId) throws IOException {
+        if (known.contains(blobId)) {
+            return;
+        }
+        byte[] object = Utils.readObjectContents(Utils.join(fromObjects, blobId));
+        List<String> chunkIds = Blobs.chunkIds(object);
+        if (!chunkIds.isEmpty() && oldId != null) {
+            known.addAll(Blobs.chunkIds(fromObjects, oldId));
+        }
+        for (String chunkId : chunkIds) {
+            sendBlob(chunkId, null);
+        }
+        /* A blob stored as a delta is read back whole, and is compressed again
+         * so that it does not take its full size in the pack of the receiver. */
+        sendObject(blobId, Blobs.compressed(object));
+    }
+
+    /** Write the object with the given id and bytes to the transfer pack. */
+    private void sendObject(String id, byte[] object) throws IOException {
+        if (known.add(id)) {
+            out.write(Utils.fromHex(id));
+            out.writeInt(object.length);
+            out.write(object);
+            sent += 1;
+        }
+    }
+
+    /**
+     * Read the raw id at the head of the next object of a transfer pack.
+     * @param in the transfer pack.
+     * @param raw where to read the id into.
+     * @return false at the end of the transfer pack.
+     */
+    static boolean readObjectHead(DataInputStream in, byte[] raw) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return false;
+        }
+        raw[0] = (byte) first;
+        in.readFully(raw, 1, raw.length - 1);
+        return true;
+    }
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import static gitlet.TestUtils.*;
+
+/** Tests push, fetch and pull, which send only the objects the receiver
+ *  misses: pushes a first commit and then an edit of one file, and checks
+ *  that the remote pack grows by exactly the blobs, trees and commits that
+ *  changed.  Then pushes a merge whose second parent the remote does not
+ *  have, pulls the whole history into a third repository and checks the
+ *  files checked out.  Last, pulls between two copies of the repository
+ *  in testing/legacy/baseline, whose commits list their blobs.  Run it
+ *  from proj2 as
+ *      java gitlet.TransferTest [REPOSITORY]
+ *  @author Zhang, Xiaochen
+ */
+public class TransferTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File fixture = new File(args.length > 0 ? args[0] : "testing/legacy/baseline");
+        File local = tempDir("gitlet-local");
+        File remote = tempDir("gitlet-remote");
+        File other = tempDir("gitlet-other");
+        File legacyRemote = tempDir("gitlet-legacy-remote");
+        File legacyLocal = tempDir("gitlet-legacy-local");
+        try {
+            gitlet(remote, "init");
+            gitlet(local, "init");
+            gitlet(local, "add-remote", "origin", remote + "/.gitlet");
+
+            /* Two blobs, the tree and the commit. */
+            write(local, "a.txt", "a\n");
+            write(local, "b.txt", "b\n");
+            gitlet(local, "add", "a.txt");
+            gitlet(local, "add", "b.txt");
+            gitlet(local, "commit", "one");
+            check("transfer", "first push", sent(remote, () -> gitlet(local, "push", "origin", "master")) == 4);
+
+            /* The remote has b.txt: the edited blob, the tree and the commit. */
+            write(local, "a.txt", "a2\n");
+            gitlet(local, "add", "a.txt");
+            gitlet(local, "commit", "two");
+            check("transfer", "partial push", sent(remote, () -> gitlet(local, "push", "origin", "master")) == 3);
+            check("transfer", "push again", sent(remote, () -> gitlet(local, "push", "origin", "master")) == 0);
+
+            /* The side commit: its blob, tree and commit.  The master commit:
+             * the same.  The merge: only its tree and itself. */
+            gitlet(local, "branch", "side");
+            gitlet(local, "checkout", "side");
+            write(local, "s.txt", "s\n");
+            gitlet(local, "add", "s.txt");
+            gitlet(local, "commit", "side");
+            gitlet(local, "checkout", "master");
+            write(local, "b.txt", "b2\n");
+            gitlet(local, "add", "b.txt");
+            gitlet(local, "commit", "three");
+            gitlet(local, "merge", "side");
+            check("transfer", "merge push", sent(remote, () -> gitlet(local, "push", "origin", "master")) == 8);
+            String log = gitlet(remote, "log");
+            check("transfer", "remote log", log.startsWith("===\ncommit ") && log.contains("\nMerged side into master.\n")
+                    && log.contains("\nthree\n") && log.contains("\ninitial commit\n"));
+            check("transfer", "second parent", gitlet(remote, "global-log").contains("\nside\n"));
+
+            /* Everything but the initial commit and its tree, which the third repository has. */
+            gitlet(other, "init");
+            gitlet(other, "add-remote", "origin", remote + "/.gitlet");
+            check("transfer", "pull", sent(other, () -> gitlet(other, "pull", "origin", "master")) == 15);
+            check("transfer", "pulled files", read(other, "a.txt").equals("a2\n")
+                    && read(other, "b.txt").equals("b2\n") && read(other, "s.txt").equals("s\n"));
+            gitlet(other, "checkout", "origin/master");
+            check("transfer", "fetched branch", read(other, "s.txt").equals("s\n"));
+
+            /* Two copies of the legacy repository: the remote commits on top of
+             * "two", and the local one resets to "one" and pulls "two", which
+             * lists its blobs, and "three".  The local copy has the objects of
+             * "two" and the staged blob loose already, so that its pack takes
+             * only the tree and the commit of "three". */
+            copy(fixture, legacyRemote);
+            copy(fixture, legacyLocal);
+            gitlet(legacyRemote, "commit", "three");
+            gitlet(legacyLocal, "reset", "f04468e3eb731052de317abc523ebf945c1e2f6d");
+            gitlet(legacyLocal, "add-remote", "up", legacyRemote + "/.gitlet");
+            check("transfer", "legacy pull", sent(legacyLocal, () -> gitlet(legacyLocal, "pull", "up", "master")) == 2);
+            check("transfer", "legacy files", read(legacyLocal, "a.txt").equals("ho\n")
+                    && read(legacyLocal, "s.txt").equals("staged\n"));
+            String legacyLog = gitlet(legacyLocal, "log");
+            check("transfer", "legacy log", legacyLog.startsWith("===") && legacyLog.contains("\nthree\n")
+                    && legacyLog.contains("\ntwo\n"));
+        } finally {
+            delete(local);
+            delete(remote);
+            delete(other);
+            delete(legacyRemote);
+            delete(legacyLocal);
+        }
+        finish("transfer");
+    }
+
+    /** A command run in another process. */
+    private interface Command {
+        String run() throws IOException, InterruptedException;
+    }
+
+    /** Run COMMAND and return the number of objects it added to the pack of
+     *  the repository in DIR, which is where the objects received go. */
+    private static int sent(File dir, Command command) throws IOException, InterruptedException {
+        File objectsDir = new File(dir, ".gitlet/objects");
+        Pack.forget();
+        int before = Pack.of(objectsDir).size();
+        command.run();
+        Pack.forget();
+        return Pack.of(objectsDir).size() - before;
+    }
+}
@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A directory of a commit: the files and the subdirectories right inside it,
+ * by name.  A file is listed with the id of its blob, and a subdirectory with
+ * the id of its own tree and a name that ends with "/".  A tree is saved as an
+ * object named by the hash of its encoding, so a directory that did not change
+ * from one commit to the next is the same tree, shared by both commits, and a
+ * new commit writes new trees only along the paths that changed.
+ *  @Author Zhang, Xiaochen
+ */
+public class Tree implements Encodable {
+    /** Pinned, so that a tree that is Java-serialized is read after edits
+     *  to this class. */
+    private static final long serialVersionUID = 6484788702858706098L;
+    /** The end of the names of subdirectories. */
+    static final String DIR_SUFFIX = "/";
+    /** The tree of an empty directory. */
+    static final Tree EMPTY = new Tree(new TreeMap<>());
+    /** The number of trees kept in the cache of trees read from disk. */
+    private static final int CACHE_SIZE = 16384;
+    /** The trees read from disk, by the path of their object. */
+    static final ObjectCache<Tree> CACHE = new ObjectCache<>(CACHE_SIZE, tree -> 1);
+    /** The ids of the blobs and the trees in this directory, by name. */
+    private final TreeMap<String, String> entries;
+
+    private Tree(TreeMap<String, String> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Read the tree with the given id from the given objects directory,
+     * which may be a remote one.
+     * @param objectsDir the objects directory.
+     * @param treeId the id of the tree.
+     */
+    public static Tree load(File objectsDir, String treeId) {
+        return CACHE.get(Utils.join(objectsDir, treeId).getPath(),
+            path -> Utils.readObject(new File(path), Tree.class));
+    }
+
+    /**
+     * Save this tree into the given objects directory, unless it is there already.
+     * @param objectsDir the objects directory.
+     * @return the id of this tree.
+     */
+    public String save(File objectsDir) {
+        byte[] bytes = Codec.encode(this);
+        String treeId = Utils.sha1(bytes);
+        File treeFile = Utils.join(objectsDir, treeId);
+        if (!Pack.exists(objectsDir, treeId)) {
+            Utils.writeContents(treeFile, bytes);
+            Pack.added(objectsDir, treeId);
+        } else {
+            Journal.addObject(treeFile);
+        }
+        return treeId;
+    }
+
+    /**
+     * Make the tree of a directory after some of its files changed, saving the
+     * new trees of its subdirectories.  The subdirectories without a change
+     * keep their trees, which are not read, and the ones left empty are dropped.
+     * This tree itself is not saved.
+     * @param objectsDir the objects directory.
+     * @param changes the new blob ids of the changed files, by path relative to
+     *                this directory, or null for the files removed.
+     * @return the new tree.
+     */
+    public Tree update(File objectsDir, SortedMap<String, String> changes) {
+        TreeMap<String, String> updated = new TreeMap<>(entries);
+        /* The changes under each subdirectory, by its name. */
+        TreeMap<String, TreeMap<String, String>> subdirs = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf(DIR_SUFFIX);
+            if (slash >= 0) {
+                subdirs.computeIfAbsent(path.substring(0, slash + 1), name -> new TreeMap<>())
+                    .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                updated.remove(path);
+            } else {
+                updated.put(path, change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> subdir : subdirs.entrySet()) {
+            String oldId = updated.get(subdir.getKey());
+            Tree old = oldId == null ? EMPTY : load(objectsDir, oldId);
+            Tree tree = old.update(objectsDir, subdir.getValue());
+            if (tree.entries.isEmpty()) {
+                updated.remove(subdir.getKey());
+            } else {
+                updated.put(subdir.getKey(), tree.save(objectsDir));
+            }
+        }
+        return new Tree(updated);
+    }
+
+    /**
+     * Add the blob ids of all the files under this directory to a map.
+     * @param objectsDir the objects directory of the subdirectories' trees.
+     * @param prefix the path of this directory, ending with "/", or "" for the root.
+     * @param blobs the blob ids by path.
+     */
+    public void flatten(File objectsDir, String prefix, Map<String, String> blobs) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String name = entry.getKey();
+            if (name.endsWith(DIR_SUFFIX)) {
+                load(objectsDir, entry.getValue()).flatten(objectsDir, prefix + name, blobs);
+            } else {
+                blobs.put(prefix + name, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Find the files that differ between two trees.  Subtrees with the same
+     * id are the same, and are not read.
+     * @param objectsDir the objects directory of the trees.
+     * @param oldId the id of the old tree, or null for an empty directory.
+     * @param newId the id of the new tree, or null for an empty directory.
+     * @param prefix the path of the directory, ending with "/", or "" for the root.
+     * @param changes the blob ids of each changed file in the old and the new
+     *                tree, null where it is missing, by path, which are added to.
+     */
+    static void diff(File objectsDir, String oldId, String newId, String prefix,
+                     Map<String, String[]> changes) {
+        if (Objects.equals(oldId, newId)) {
+            return;
+        }
+        SortedMap<String, String> oldEntries = oldId == null ? EMPTY.entries : load(objectsDir, oldId).entries;
+        SortedMap<String, String> newEntries = newId == null ? EMPTY.entries : load(objectsDir, newId).entries;
+        Set<String> names = new TreeSet<>(oldEntries.keySet());
+        names.addAll(newEntries.keySet());
+        for (String name : names) {
+            String oldEntry = oldEntries.get(name);
+            String newEntry = newEntries.get(name);
+            if (name.endsWith(DIR_SUFFIX)) {
+                diff(objectsDir, oldEntry, newEntry, prefix + name, changes);
+            } else if (!Objects.equals(oldEntry, newEntry)) {
+                changes.put(prefix + name, new String[]{oldEntry, newEntry});
+            }
+        }
+    }
+
+    /** Get the ids of the blobs and the trees in this directory, by name. */
+    public SortedMap<String, String> getEntries() {
+        return Collections.unmodifiableSortedMap(entries);
+    }
+
+    @Override
+    public byte codecTag() {
+        return Codec.TREE;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Codec.writeIdMap(out, entries);
+    }
+
+    /** Read a tree written by encode. */
+    static Tree decode(DataInputStream in) throws IOException {
+        return new Tree(Codec.readIdMap(in));
+    }
+}
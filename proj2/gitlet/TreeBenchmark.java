@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+
+import static gitlet.TestUtils.*;
+
+/** Times committing a change of one file in trees of different sizes
+ *  against copying the whole list of files, as commits did before they had
+ *  trees.  Run it as
+ *      java gitlet.TreeBenchmark [ROUNDS]
+ *  @author Zhang, Xiaochen
+ */
+public class TreeBenchmark {
+    /** The numbers of files in the trees under test. */
+    private static final int[] FILE_COUNTS = {1000, 10000, 100000};
+    /** The number of files in a directory of the trees under test. */
+    private static final int FILES_PER_DIR = 100;
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        for (int files : FILE_COUNTS) {
+            timeCommits(files, rounds);
+        }
+    }
+
+    /** Time ROUNDS commits that change one file in a tree of FILES files,
+     *  first copying the list of all the files and then updating the tree. */
+    private static void timeCommits(int files, int rounds) throws IOException {
+        File objects = tempDir("gitlet-tree");
+        try {
+            TreeMap<String, String> blobs = new TreeMap<>();
+            for (int i = 0; i < files; i++) {
+                blobs.put("dir" + (i / FILES_PER_DIR) + "/file" + i + ".txt", Utils.sha1("content " + i));
+            }
+            Tree tree = Tree.load(objects, Tree.EMPTY.update(objects, blobs).save(objects));
+            /* Warm up both ways before timing them. */
+            timeCopied(blobs, rounds / 10 + 1);
+            timeUpdated(objects, tree, files, rounds / 10 + 1);
+            double copied = timeCopied(blobs, rounds);
+            double updated = timeUpdated(objects, tree, files, rounds);
+            System.out.printf("%6d files: list copied %8.3f ms per commit;"
+                    + " tree updated %8.3f ms per commit; speedup %.1fx%n",
+                    files, copied / rounds, updated / rounds, copied / updated);
+        } finally {
+            delete(objects);
+        }
+    }
+
+    /** Returns the milliseconds needed to copy and encode BLOBS with one
+     *  file changed ROUNDS times, as a commit that lists its blobs did. */
+    private static double timeCopied(TreeMap<String, String> blobs, int rounds) {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            TreeMap<String, String> copy = new TreeMap<>(blobs);
+            copy.put(blobs.firstKey(), Utils.sha1("change " + i));
+            Codec.encode(copy);
+            Utils.sha1(copy.toString());
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /** Returns the milliseconds needed to update TREE, of FILES files saved in
+     *  OBJECTS, with a change of one file ROUNDS times, saving the new trees. */
+    private static double timeUpdated(File objects, Tree tree, int files, int rounds) {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            TreeMap<String, String> change = new TreeMap<>();
+            change.put("dir" + (i % (files / FILES_PER_DIR)) + "/file0.txt", Utils.sha1("change " + i));
+            tree.update(objects, change).save(objects);
+        }
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
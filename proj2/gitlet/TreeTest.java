@@ -0,0 +1,61 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import static gitlet.TestUtils.*;
+
+/** Tests the commands on files in subdirectories.  Run it as
+ *      java gitlet.TreeTest
+ *  @author Zhang, Xiaochen
+ */
+public class TreeTest {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        checkSubdirectories();
+        finish("trees");
+    }
+
+    /** Commit, check out, merge and fetch files in subdirectories. */
+    private static void checkSubdirectories() throws IOException, InterruptedException {
+        File dir = tempDir("gitlet-tree");
+        File remote = tempDir("gitlet-tree");
+        try {
+            gitlet(dir, "init");
+            write(dir, "d/e/a.txt", "a\n");
+            write(dir, "d/b.txt", "b\n");
+            write(dir, "c.txt", "c\n");
+            gitlet(dir, "add", "d", "c.txt");
+            gitlet(dir, "commit", "one");
+            gitlet(dir, "branch", "other");
+            write(dir, "d/e/a.txt", "a2\n");
+            check("subdirectories", "modified", gitlet(dir, "status").contains("d/e/a.txt (modified)"));
+            gitlet(dir, "add", "d/e/a.txt");
+            gitlet(dir, "rm", "d/b.txt");
+            gitlet(dir, "commit", "two");
+            check("subdirectories", "rm", !new File(dir, "d/b.txt").exists());
+
+            gitlet(dir, "checkout", "other");
+            check("subdirectories", "checkout",
+                    read(dir, "d/e/a.txt").equals("a\n") && read(dir, "d/b.txt").equals("b\n"));
+            write(dir, "f/g.txt", "g\n");
+            gitlet(dir, "add", "f/g.txt");
+            gitlet(dir, "commit", "three");
+            gitlet(dir, "checkout", "master");
+            check("subdirectories", "empty directory", !new File(dir, "f").exists());
+            gitlet(dir, "merge", "other");
+            check("subdirectories", "merge", read(dir, "f/g.txt").equals("g\n")
+                    && read(dir, "d/e/a.txt").equals("a2\n") && !new File(dir, "d/b.txt").exists());
+
+            gitlet(remote, "init");
+            gitlet(remote, "add-remote", "origin", new File(dir, ".gitlet").getPath());
+            gitlet(remote, "fetch", "origin", "master");
+            gitlet(remote, "checkout", "origin/master");
+            check("subdirectories", "fetch",
+                    read(remote, "f/g.txt").equals("g\n") && read(remote, "d/e/a.txt").equals("a2\n"));
+        } finally {
+            delete(dir);
+            delete(remote);
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -63,6 +70,79 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** The size of the chunks in which sha1File reads a file. */
+    private static final int HASH_CHUNK_SIZE = 64 * 1024;
+
+    /** A SHA-1 digest for each thread, reused by sha1File. */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support SHA-1");
+            }
+        });
+
+    /** A direct read buffer for each thread, reused by sha1File. */
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HASH_CHUNK_SIZE));
+
+    /** Returns the SHA-1 hash of the contents of FILE, which is the same
+     *  as sha1(readContents(FILE)).  FILE is read in fixed-size chunks
+     *  through a FileChannel, so it is never held on the heap as a whole.
+     *  FILE must be a normal file.  Throws IllegalArgumentException in
+     *  case of problems. */
+    static String sha1File(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        MessageDigest md = SHA1_DIGEST.get();
+        ByteBuffer buffer = HASH_BUFFER.get();
+        md.reset();
+        try (FileChannel channel =
+                 FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return toHex(md.digest());
+    }
+
+    /** The hexadecimal digits, by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns the hexadecimal numeral of the bytes in RAW, such as a
+     *  SHA-1 digest. */
+    static String toHex(byte[] raw) {
+        char[] result = new char[2 * raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            result[2 * i] = HEX_DIGITS[(raw[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[raw[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes whose lower-case hexadecimal numeral is HEX,
+     *  the inverse of toHex. */
+    static byte[] fromHex(String hex) {
+        byte[] raw = new byte[hex.length() / 2];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) ((hexValue(hex.charAt(2 * i)) << 4)
+                             | hexValue(hex.charAt(2 * i + 1)));
+        }
+        return raw;
+    }
+
+    /** Returns the value of the lower-case hexadecimal digit C. */
+    private static int hexValue(char c) {
+        return c <= '9' ? c - '0' : c - 'a' + 10;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -91,9 +171,14 @@ class Utils {
     /* READING AND WRITING FILE CONTENTS */
 
     /** Return the entire contents of FILE as a byte array.  FILE must
-     *  be a normal file.  Throws IllegalArgumentException
+     *  be a normal file.  A file the running command wrote is read from
+     *  its journal.  Throws IllegalArgumentException
      *  in case of problems. */
     static byte[] readContents(File file) {
+        byte[] pending = Journal.read(file);
+        if (pending != null) {
+            return pending;
+        }
         if (!file.isFile()) {
             throw new IllegalArgumentException("must be a normal file");
         }
@@ -113,7 +198,8 @@ class Utils {
 
     /** Write the result of concatenating the bytes in CONTENTS to FILE,
      *  creating or overwriting it as needed.  Each object in CONTENTS may be
-     *  either a String or a byte array.  Throws IllegalArgumentException
+     *  either a String or a byte array.  A file of the repository goes to
+     *  the journal of the running command.  Throws IllegalArgumentException
      *  in case of problems. */
     static void writeContents(File file, Object... contents) {
         try {
@@ -121,40 +207,91 @@ class Utils {
                 throw
                     new IllegalArgumentException("cannot overwrite directory");
             }
-            BufferedOutputStream str =
-                new BufferedOutputStream(Files.newOutputStream(file.toPath()));
-            for (Object obj : contents) {
-                if (obj instanceof byte[]) {
-                    str.write((byte[]) obj);
-                } else {
-                    str.write(((String) obj).getBytes(StandardCharsets.UTF_8));
-                }
+            if (Journal.holds(file)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                writeAll(bytes, contents);
+                Journal.write(file, bytes.toByteArray());
+                return;
             }
-            str.close();
+            try (BufferedOutputStream str =
+                     new BufferedOutputStream(Files.newOutputStream(file.toPath()))) {
+                writeAll(str, contents);
+            }
+            /* A new object is still named in the journal. */
+            Journal.addObject(file);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
+    /** Write each of CONTENTS, a String or a byte array, to OUT. */
+    private static void writeAll(OutputStream out, Object... contents) throws IOException {
+        for (Object obj : contents) {
+            if (obj instanceof byte[]) {
+                out.write((byte[]) obj);
+            } else {
+                out.write(((String) obj).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     *  If FILE is a gitlet object that is no longer loose, it is read from
+     *  the pack of its objects directory instead.  FILE may hold either the
+     *  binary form of Codec or a Java-serialized object.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
+            return expectedClass.cast(Codec.decode(openObject(file)));
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** Return a stream over the bytes of the gitlet object FILE, which
+     *  is either a loose file or an entry of the pack of its objects
+     *  directory.  A loose file the running command deleted, as repack
+     *  does, is read from the pack.  Throws IllegalArgumentException if
+     *  there is no such object. */
+    static InputStream openObject(File file) {
+        try {
+            if (Journal.exists(file)) {
+                byte[] pending = Journal.read(file);
+                if (pending != null) {
+                    return new ByteArrayInputStream(pending);
+                }
+                return new BufferedInputStream(new FileInputStream(file));
+            }
+            InputStream packed =
+                Pack.of(file.getParentFile()).openStream(file.getName());
+            if (packed == null) {
+                throw new FileNotFoundException(file.getPath());
+            }
+            return packed;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the raw bytes of the gitlet object FILE, loose or packed.
+     *  Throws IllegalArgumentException if there is no such object. */
+    static byte[] readObjectContents(File file) {
+        if (Journal.exists(file)) {
+            return readContents(file);
+        }
+        byte[] packed = Pack.read(file.getParentFile(), file.getName());
+        if (packed == null) {
+            throw new IllegalArgumentException("no such object " + file);
+        }
+        return packed;
+    }
+
+    /** Write OBJ to FILE, in the binary form of Codec if OBJ is
+     *  Encodable and Java-serialized otherwise. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        writeContents(file, Codec.encode(obj));
     }
 
     /* DIRECTORIES */
@@ -169,7 +306,8 @@ class Utils {
         };
 
     /** Returns a list of the names of all plain files in the directory DIR, in
-     *  lexicographic order as Java Strings.  Returns null if DIR does
+     *  lexicographic order as Java Strings, including the files the running
+     *  command made and not the ones it deleted.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(File dir) {
         String[] files = dir.list(PLAIN_FILES);
@@ -177,7 +315,7 @@ class Utils {
             return null;
         } else {
             Arrays.sort(files);
-            return Arrays.asList(files);
+            return Journal.list(dir, Arrays.asList(files));
         }
     }
 
@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Brings the working directory from one commit to another, as checkout of a
+ * branch and reset do.  Only the paths that differ are touched: a working file
+ * that already has the content of the target's blob is skipped, which the stat
+ * cache of the staging area tells without reading the file when it was not
+ * changed since it was last written or hashed.  The files to write are
+ * read, inflated and written in parallel.
+ * Files may be in subdirectories, named by their paths with "/" between names.
+ *  @Author Zhang, Xiaochen
+ */
+public class WorkingTree {
+
+    /** What an update did to the working directory. */
+    public static class Report {
+        /** The number of files written from their blobs. */
+        private int written;
+        /** The number of files that already had the right content. */
+        private int skipped;
+        /** The number of files deleted. */
+        private int deleted;
+
+        public int getWritten() {
+            return written;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files written, %d unchanged files skipped, %d files deleted.",
+                    written, skipped, deleted);
+        }
+    }
+
+    /**
+     * Update the working directory and the staging area from the head commit
+     * to the target commit.  Untracked files must have been checked already.
+     * The files tracked by the head commit or staged but not tracked by the
+     * target are deleted, and the files of the target are written unless they
+     * already have the right content.  The staging area then tracks the
+     * target commit, and is cleared unless KEEPSTAGE, but it is not saved.
+     * @param staging the staging area.
+     * @param headCommit the current head commit.
+     * @param targetCommit the commit being checked out.
+     * @param keepStage true to keep the files staged, as checkout of a branch does.
+     * @return what was done.
+     */
+    public static Report update(Staging staging, Commit headCommit, Commit targetCommit,
+                                boolean keepStage) {
+        Report report = new Report();
+        Set<String> tracked = new TreeSet<>(headCommit.getBlobs().keySet());
+        tracked.addAll(staging.getAdded().keySet());
+        /* Done first, so that the stat cache describes the target's blobs. */
+        if (keepStage) {
+            staging.retrack(targetCommit);
+        } else {
+            staging.clear(targetCommit);
+        }
+        for (String file : tracked) {
+            if (!targetCommit.getBlobs().containsKey(file) && delete(file)) {
+                report.deleted += 1;
+            }
+        }
+        Map<String, String> toWrite = new TreeMap<>();
+        for (Map.Entry<String, String> blob : targetCommit.getBlobs().entrySet()) {
+            String file = blob.getKey();
+            File workingFile = Utils.join(Repository.CWD, file);
+            if (workingFile.isFile() && staging.hashFile(file, workingFile).equals(blob.getValue())) {
+                report.skipped += 1;
+            } else {
+                toWrite.put(file, blob.getValue());
+            }
+        }
+        restoreAll(toWrite);
+        for (Map.Entry<String, String> blob : toWrite.entrySet()) {
+            staging.remember(blob.getKey(), blob.getValue(), Utils.join(Repository.CWD, blob.getKey()));
+        }
+        report.written = toWrite.size();
+        return report;
+    }
+
+    /**
+     * Get the paths of all the files of the working directory, in order,
+     * leaving out the .gitlet directory.
+     */
+    static List<String> listFiles() {
+        List<String> files = new ArrayList<>();
+        listFiles(Repository.CWD, "", files);
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Add the paths of the files under DIR, whose path is PREFIX, to FILES. */
+    private static void listFiles(File dir, String prefix, List<String> files) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                files.add(prefix + name);
+            } else if (file.isDirectory() && !file.equals(Repository.GITLET_DIR)) {
+                listFiles(file, prefix + name + Tree.DIR_SUFFIX, files);
+            }
+        }
+    }
+
+    /**
+     * Delete a working file, and then the directories it leaves empty.
+     * @param file the path of the file.
+     * @return true if the file was deleted.
+     */
+    static boolean delete(String file) {
+        File workingFile = Utils.join(Repository.CWD, file);
+        if (!workingFile.delete()) {
+            return false;
+        }
+        File dir = workingFile.getParentFile();
+        while (!dir.equals(Repository.CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
+    /**
+     * Write the given files from their blobs, in parallel when there are
+     * several.  Every file is attempted even if some fail; then the first
+     * failure is thrown.
+     * @param files the blob ids of the files to write, by file name.
+     */
+    static void restoreAll(Map<String, String> files) {
+        Parallel.forEach(new ArrayList<>(files.entrySet()), blob ->
+            Blobs.restore(blob.getValue(), Utils.join(Repository.CWD, blob.getKey())));
+    }
+}